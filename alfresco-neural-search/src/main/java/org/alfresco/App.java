@@ -1,6 +1,8 @@
 package org.alfresco;
 
 import org.alfresco.opensearch.index.OpenSearchConfiguration;
+import org.alfresco.opensearch.index.Reindexer;
+import org.alfresco.rest.SearchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -16,6 +18,8 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
 
+import java.util.Arrays;
+
 import static org.springframework.security.config.Customizer.withDefaults;
 
 /**
@@ -25,12 +29,21 @@ import static org.springframework.security.config.Customizer.withDefaults;
 @EnableScheduling
 public class App implements CommandLineRunner {
 
+    // Command line argument rebuilding the node state store from the index
+    static final String REBUILD_STATE = "--rebuild-state";
+
+    // Command line argument rebuilding the index into a new version in the background
+    static final String REINDEX = "--reindex";
+
     @Value("${cors.filter.disabled}")
     private boolean corsFilterDisabled;
 
     @Autowired
     private OpenSearchConfiguration openSearchConfiguration;
 
+    @Autowired
+    private Reindexer reindexer;
+
     /**
      * Entry point for the application.
      *
@@ -41,14 +54,19 @@ public class App implements CommandLineRunner {
     }
 
     /**
-     * Apply OpenSearch configuration and initiate batch indexing
+     * Apply OpenSearch configuration and initiate batch indexing.
+     * The {@code --rebuild-state} argument rebuilds the node state store from the index before indexing starts.
+     * The {@code --reindex} argument rebuilds the index into a new version while indexing goes on.
      *
      * @param args command line arguments
      * @throws Exception if an error occurs during application execution
      */
     @Override
     public void run(String... args) throws Exception {
-        openSearchConfiguration.apply();
+        openSearchConfiguration.apply(Arrays.asList(args).contains(REBUILD_STATE));
+        if (Arrays.asList(args).contains(REINDEX)) {
+            reindexer.start();
+        }
     }
 
     /**
@@ -80,6 +98,8 @@ public class App implements CommandLineRunner {
             corsConfiguration.addAllowedOrigin("*");
             corsConfiguration.addAllowedHeader("*");
             corsConfiguration.addAllowedMethod("*");
+            corsConfiguration.addExposedHeader("ETag");
+            corsConfiguration.addExposedHeader(SearchService.NEXT_PAGE_TOKEN);
 
             UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
             source.registerCorsConfiguration("/**", corsConfiguration);
@@ -4,17 +4,21 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Factory class for creating and managing HTTP client connections to the Alfresco Solr API.
@@ -29,6 +33,16 @@ public class AlfrescoSolrApiClientFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(AlfrescoSolrApiClientFactory.class);
 
+    /**
+     * Reads the body of a response as a stream.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface ResponseStreamHandler<T> {
+        T handle(InputStream stream) throws IOException;
+    }
+
     /**
      * Base URL for the content service.
      */
@@ -47,14 +61,47 @@ public class AlfrescoSolrApiClientFactory {
     @Value("${content.solr.secret}")
     private String secret;
 
+    /**
+     * Maximum time in milliseconds to wait for a connection from the pool.
+     */
+    @Value("${content.solr.connectionRequestTimeout}")
+    private long connectionRequestTimeout;
+
+    /**
+     * Maximum time in milliseconds to wait for the response of a request.
+     */
+    @Value("${content.solr.responseTimeout}")
+    private long responseTimeout;
+
+    @Value("${batch.indexer.pipeline.transactions.concurrency}")
+    private int transactionsConcurrency;
+
+    @Value("${batch.indexer.pipeline.metadata.concurrency}")
+    private int metadataConcurrency;
+
+    @Value("${batch.indexer.pipeline.content.concurrency}")
+    private int contentConcurrency;
+
     private CloseableHttpClient httpClient;
 
     /**
      * Initializes the HTTP client after the bean is constructed.
+     * The connection pool has a connection for every worker of the ingestion pipeline calling the Solr API, since
+     * all the requests go to the same route and the default pool only allows 5 connections per route.
      */
     @PostConstruct
     public void init() {
-        this.httpClient = HttpClients.createDefault();
+        int maxConnections = transactionsConcurrency + metadataConcurrency + contentConcurrency;
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnections)
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout))
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+                        .build())
+                .build();
     }
 
     /**
@@ -141,6 +188,33 @@ public class AlfrescoSolrApiClientFactory {
         return executeRequest(request);
     }
 
+    /**
+     * Executes a GET request to the specified path, handing the response body to the handler as a stream,
+     * so large responses are never held in memory. The stream is closed when the handler returns.
+     *
+     * @param path the path to the Solr endpoint.
+     * @param handler the handler reading the response body.
+     * @param <T> the type of the result of the handler.
+     * @return the result of the handler.
+     * @throws IOException if an error occurs during request execution or while reading the response.
+     */
+    public <T> T executeGetRequest(String path, ResponseStreamHandler<T> handler) throws IOException {
+        HttpGet request = createHttpGetRequest(path);
+        try {
+            return httpClient.execute(request, response -> {
+                if (response.getEntity() == null) {
+                    return handler.handle(InputStream.nullInputStream());
+                }
+                try (InputStream stream = response.getEntity().getContent()) {
+                    return handler.handle(stream);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Error executing GET request", e);
+            throw e;
+        }
+    }
+
     /**
      * Executes a POST request to the specified path with the given payload.
      *
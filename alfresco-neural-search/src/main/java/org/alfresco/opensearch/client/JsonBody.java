@@ -0,0 +1,162 @@
+package org.alfresco.opensearch.client;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the JSON bodies of OpenSearch requests with a shared Jackson {@link JsonFactory}.
+ * <p>
+ * Bodies are written with a {@link JsonGenerator} straight to UTF-8 bytes, which also takes care of escaping
+ * string values, so no intermediate {@code String} is created for a body. Every thread reuses its own output
+ * buffer, so building a body only allocates the resulting byte array.
+ */
+public final class JsonBody {
+
+    // Root values are separated by a new line, as required by NDJSON bodies
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder().rootValueSeparator("\n").build();
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    // Buffers grown beyond this size are not kept, so a single large body does not stay referenced by a thread
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Writes JSON content with a generator.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private JsonBody() {
+    }
+
+    /**
+     * Builds a request entity containing the JSON written by the writer.
+     *
+     * @param writer the writer of the JSON content
+     * @return the request entity
+     * @throws IOException if an error occurs while writing the content
+     */
+    public static HttpEntity entity(Writer writer) throws IOException {
+        return new ByteArrayEntity(bytes(writer), ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Encodes the JSON values written by the writer as NDJSON lines, each value followed by a new line.
+     *
+     * @param writer the writer of the JSON values
+     * @return the UTF-8 bytes of the lines
+     * @throws IOException if an error occurs while writing the content
+     */
+    public static byte[] lines(Writer writer) throws IOException {
+        return bytes(generator -> {
+            writer.write(generator);
+            generator.writeRaw('\n');
+        });
+    }
+
+    /**
+     * Builds a request entity streaming NDJSON lines, without copying them into a single buffer.
+     *
+     * @param lines the UTF-8 bytes of the lines, as returned by {@link #lines(Writer)}
+     * @return the request entity
+     */
+    public static HttpEntity ndjson(List<byte[]> lines) {
+        return new LinesEntity(lines);
+    }
+
+    /**
+     * Encodes the JSON written by the writer to UTF-8 bytes, using the buffer of the current thread.
+     *
+     * @param writer the writer of the JSON content
+     * @return the UTF-8 bytes of the content
+     * @throws IOException if an error occurs while writing the content
+     */
+    public static byte[] bytes(Writer writer) throws IOException {
+        Buffer buffer = BUFFERS.get();
+        buffer.reset();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            writer.write(generator);
+        }
+        byte[] bytes = buffer.toByteArray();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            BUFFERS.remove();
+        }
+        return bytes;
+    }
+
+    /**
+     * Reusable output buffer.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        private Buffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private int capacity() {
+            return buf.length;
+        }
+    }
+
+    /**
+     * Repeatable entity made of several byte arrays, written one after the other.
+     */
+    private static class LinesEntity extends AbstractHttpEntity {
+
+        private final List<byte[]> lines;
+        private final long length;
+
+        private LinesEntity(List<byte[]> lines) {
+            this.lines = lines;
+            this.length = lines.stream().mapToLong(line -> line.length).sum();
+            setContentType(ContentType.APPLICATION_JSON.toString());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return new SequenceInputStream(Collections.enumeration(
+                    lines.stream().map(ByteArrayInputStream::new).toList()));
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            for (byte[] line : lines) {
+                outputStream.write(line);
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+}
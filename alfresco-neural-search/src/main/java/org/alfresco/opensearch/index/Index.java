@@ -1,10 +1,10 @@
 package org.alfresco.opensearch.index;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.Response;
 import org.opensearch.client.ResponseException;
@@ -18,15 +18,27 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Component for managing OpenSearch indices.
+ * <p>
+ * Documents are stored in versioned indices named {@code {opensearch.index.name}-v{N}}, and reads and writes go
+ * through the alias {@code opensearch.index.name}, so the index can be rebuilt into a new version and swapped in
+ * without downtime. An index created by a previous release with the name of the alias lacks the fields of the
+ * segments, see {@link #hasSegmentMapping(String)}, so it cannot be rebuilt from its own segments and has to be
+ * indexed again from the repository.
  */
 @Component
 public class Index {
 
     static final Logger LOG = LoggerFactory.getLogger(Index.class);
 
+    // Suffix of the versioned indices behind the alias
+    private static final Pattern VERSION = Pattern.compile("-v(\\d+)$");
+
     @Value("${opensearch.index.name}")
     private String indexName;
 
@@ -55,76 +67,168 @@ public class Index {
     }
 
     /**
-     * Applies the index settings and mappings to the OpenSearch cluster.
+     * Applies the index settings and mappings to the OpenSearch cluster, creating the first version of the index
+     * behind the index alias.
      *
      * @throws Exception if an error occurs while applying the settings
      */
     public void createKnnIndex() throws Exception {
-        Request request = new Request("PUT", "/" + indexName);
-        String jsonString = String.format("""
-                {
-                  "settings": {
-                    "index.knn": true,
-                    "default_pipeline": "%s"
-                  },
-                  "mappings": {
-                    "properties": {
-                      "id": {
-                        "type": "text"
-                      },
-                      "passage_embedding": {
-                        "type": "knn_vector",
-                        "dimension": 768,
-                        "method": {
-                          "engine": "lucene",
-                          "space_type": "l2",
-                          "name": "hnsw",
-                          "parameters": {}
-                        }
-                      },
-                      "dbid": {
-                          "type": "long"
-                      },
-                      "contentId": {
-                          "type": "long"
-                      },
-                      "name": {
-                        "type": "text"
-                      },
-                      "text": {
-                        "type": "text"
-                      }
-                    }
-                  }
-                }
-                """, ingestPipelineName);
-
-        request.setEntity(new StringEntity(jsonString, ContentType.APPLICATION_JSON));
+        createKnnIndex(indexName + "-v1", true);
+    }
+
+    /**
+     * Creates a versioned index with the index settings and mappings.
+     *
+     * @param versionedIndexName the name of the versioned index
+     * @param aliased true to point the index alias to the new index
+     * @throws Exception if an error occurs while applying the settings
+     */
+    public void createKnnIndex(String versionedIndexName, boolean aliased) throws Exception {
+        Request request = new Request("PUT", "/" + versionedIndexName);
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            if (aliased) {
+                generator.writeObjectFieldStart("aliases");
+                generator.writeObjectFieldStart(indexName);
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeObjectFieldStart("settings");
+            generator.writeBooleanField("index.knn", true);
+            generator.writeStringField("default_pipeline", ingestPipelineName);
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("mappings");
+            generator.writeObjectFieldStart("properties");
+            writeProperty(generator, "id", "text");
+            writeProperty(generator, "uuid", "keyword");
+            writeProperty(generator, "ordinal", "integer");
+            writeProperty(generator, "segmentCount", "integer");
+            generator.writeObjectFieldStart("passage_embedding");
+            generator.writeStringField("type", "knn_vector");
+            generator.writeNumberField("dimension", 768);
+            generator.writeObjectFieldStart("method");
+            generator.writeStringField("engine", "lucene");
+            generator.writeStringField("space_type", "l2");
+            generator.writeStringField("name", "hnsw");
+            generator.writeObjectFieldStart("parameters");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            writeProperty(generator, "dbid", "long");
+            writeProperty(generator, "contentId", "long");
+            writeProperty(generator, "name", "text");
+            writeProperty(generator, "text", "text");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
         restClient().performRequest(request);
 
-        LOG.info("Index {} associated to pipeline {} has been created with Knn configuration", indexName, ingestPipelineName);
+        LOG.info("Index {} associated to pipeline {} has been created with Knn configuration", versionedIndexName,
+                ingestPipelineName);
 
     }
 
+    /**
+     * Gets the versioned index the index alias points to.
+     *
+     * @return the name of the versioned index, or the name of the alias when it is a plain index created by a
+     * previous release
+     * @throws Exception if an error occurs while retrieving the alias
+     */
+    public String getAliasTarget() throws Exception {
+        Request request = new Request("GET", "/_alias/" + indexName);
+        try {
+            Response response = restClient().performRequest(request);
+            ObjectMapper objectMapper = new ObjectMapper();
+            Iterator<String> indices = objectMapper.readTree(response.getEntity().getContent()).fieldNames();
+            return indices.hasNext() ? indices.next() : indexName;
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                return indexName;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the version following a versioned index.
+     *
+     * @param versionedIndexName the name of the current versioned index, or the name of the alias
+     * @return the name of the next versioned index
+     */
+    public String getNextVersion(String versionedIndexName) {
+        Matcher matcher = VERSION.matcher(versionedIndexName);
+        int version = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+        return indexName + "-v" + (version + 1);
+    }
+
+    /**
+     * Points the index alias to another versioned index in a single atomic request, so searches and writes never
+     * see a missing or partial index. A plain index with the name of the alias is removed in the same request.
+     *
+     * @param from the versioned index the alias points to, or the name of the alias for a plain index
+     * @param to the versioned index to point the alias to
+     * @throws Exception if an error occurs while updating the alias
+     */
+    public void swapAlias(String from, String to) throws Exception {
+        Request request = new Request("POST", "/_aliases");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("actions");
+            generator.writeStartObject();
+            if (from.equals(indexName)) {
+                generator.writeObjectFieldStart("remove_index");
+                generator.writeStringField("index", from);
+            } else {
+                generator.writeObjectFieldStart("remove");
+                generator.writeStringField("index", from);
+                generator.writeStringField("alias", indexName);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("add");
+            generator.writeStringField("index", to);
+            generator.writeStringField("alias", indexName);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
+        restClient().performRequest(request);
+        LOG.info("Alias {} has been moved from index {} to index {}", indexName, from, to);
+    }
+
+    /**
+     * Deletes a versioned index.
+     *
+     * @param versionedIndexName the name of the versioned index
+     * @throws Exception if an error occurs while deleting the index
+     */
+    public void deleteIndex(String versionedIndexName) throws Exception {
+        restClient().performRequest(new Request("DELETE", "/" + versionedIndexName));
+        LOG.info("Index {} has been deleted", versionedIndexName);
+    }
+
     /**
      * Create index to control alfresco indexing information
      */
     public void createAlfrescoIndex() throws Exception {
 
         Request request = new Request("PUT", "/alfresco-control");
-        String jsonString = """
-                {
-                  "mappings": {
-                    "properties": {
-                      "lastTransactionId": {
-                        "type": "long"
-                      }
-                    }
-                  }
-                }
-                """;
-
-        request.setEntity(new StringEntity(jsonString, ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("mappings");
+            generator.writeObjectFieldStart("properties");
+            writeProperty(generator, "lastTransactionId", "long");
+            writeProperty(generator, "owner", "keyword");
+            writeProperty(generator, "expiresAt", "long");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
         restClient().performRequest(request);
 
         LOG.info("Internal index alfresco-control for alfresco indexing information has been created");
@@ -139,8 +243,11 @@ public class Index {
      */
     public void updateAlfrescoIndex(Long lastTransactionId) throws Exception {
         Request request = new Request("PUT", "/alfresco-control/_doc/1");
-        String jsonString = "{ \"lastTransactionId\": %d }".formatted(lastTransactionId);
-        request.setEntity(new StringEntity(jsonString, ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("lastTransactionId", lastTransactionId);
+            generator.writeEndObject();
+        }));
         restClient().performRequest(request);
     }
 
@@ -167,6 +274,144 @@ public class Index {
 
     }
 
+    /**
+     * Retrieves the lease documents of the partitions of the transaction stream from the Alfresco index.
+     *
+     * @param count the number of partitions
+     * @return the lease of every partition, by partition number, null for partitions without a lease document
+     * @throws Exception if an error occurs during the retrieval process
+     */
+    public PartitionLease[] getPartitionLeases(int count) throws Exception {
+        Request request = new Request("POST", "/alfresco-control/_mget");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("ids");
+            for (int partition = 0; partition < count; partition++) {
+                generator.writeString(partitionLeaseId(partition));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
+        Response response = restClient().performRequest(request);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode docs = objectMapper.readTree(response.getEntity().getContent()).path("docs");
+        PartitionLease[] leases = new PartitionLease[count];
+        for (int partition = 0; partition < count && partition < docs.size(); partition++) {
+            JsonNode doc = docs.get(partition);
+            if (doc.path("found").asBoolean()) {
+                JsonNode source = doc.path("_source");
+                leases[partition] = new PartitionLease(partition, source.path("owner").asText(),
+                        source.path("expiresAt").asLong(), source.path("lastTransactionId").asLong(),
+                        doc.path("_seq_no").asLong(), doc.path("_primary_term").asLong());
+            }
+        }
+        return leases;
+    }
+
+    /**
+     * Writes the lease document of a partition, only if it has not changed since it was read, or only if it does
+     * not exist yet when no current lease is specified.
+     *
+     * @param partition the partition number
+     * @param current the lease read from the index, or null to create the lease document
+     * @param owner the owner of the lease, empty when released
+     * @param expiresAt the expiration time of the lease in milliseconds since the epoch
+     * @param lastTransactionId the last transaction indexed for the partition
+     * @return the written lease, or null if the document has been changed or created by another instance
+     * @throws Exception if an error occurs during the update process
+     */
+    public PartitionLease writePartitionLease(int partition, PartitionLease current, String owner, long expiresAt,
+                                              long lastTransactionId) throws Exception {
+        Request request = new Request("PUT", "/alfresco-control/_doc/" + partitionLeaseId(partition));
+        if (current == null) {
+            request.addParameter("op_type", "create");
+        } else {
+            request.addParameter("if_seq_no", String.valueOf(current.seqNo()));
+            request.addParameter("if_primary_term", String.valueOf(current.primaryTerm()));
+        }
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("owner", owner);
+            generator.writeNumberField("expiresAt", expiresAt);
+            generator.writeNumberField("lastTransactionId", lastTransactionId);
+            generator.writeEndObject();
+        }));
+        try {
+            Response response = restClient().performRequest(request);
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode jsonResponse = objectMapper.readTree(response.getEntity().getContent());
+            return new PartitionLease(partition, owner, expiresAt, lastTransactionId,
+                    jsonResponse.path("_seq_no").asLong(), jsonResponse.path("_primary_term").asLong());
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 409) {
+                return null;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Builds the id of the lease document of a partition in the Alfresco index.
+     *
+     * @param partition the partition number
+     * @return the id of the lease document
+     */
+    private static String partitionLeaseId(int partition) {
+        return "partition-" + partition;
+    }
+
+    /**
+     * Lease of a partition of the transaction stream, as stored in the Alfresco index.
+     *
+     * @param partition the partition number
+     * @param owner the instance holding the lease, empty when released
+     * @param expiresAt the expiration time of the lease in milliseconds since the epoch
+     * @param lastTransactionId the last transaction indexed for the partition
+     * @param seqNo the sequence number of the lease document, for optimistic concurrency control
+     * @param primaryTerm the primary term of the lease document, for optimistic concurrency control
+     */
+    public record PartitionLease(int partition, String owner, long expiresAt, long lastTransactionId,
+                                 long seqNo, long primaryTerm) {
+    }
+
+    /**
+     * Writes the mapping of a field with the specified type.
+     *
+     * @param generator the generator of the request body
+     * @param name the name of the field
+     * @param type the type of the field
+     * @throws IOException if an error occurs while writing the mapping
+     */
+    private static void writeProperty(JsonGenerator generator, String name, String type) throws IOException {
+        generator.writeObjectFieldStart(name);
+        generator.writeStringField("type", type);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Checks whether an index has the mapping of the document segments written by this release: the UUID of the
+     * document as a keyword and the ordinal and segment count of the segment. The dynamic mapping of an index
+     * created by a previous release maps the UUID as text, if at all, so deletes by UUID and the UUID sort of
+     * the searches would silently miss its documents.
+     *
+     * @param name the name of the index or alias
+     * @return true if every index behind the name has the mapping of the segments
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
+     */
+    public boolean hasSegmentMapping(String name) throws IOException {
+        Response response = restClient().performRequest(new Request("GET", "/" + name + "/_mapping"));
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (JsonNode mapping : objectMapper.readTree(response.getEntity().getContent())) {
+            JsonNode properties = mapping.path("mappings").path("properties");
+            if (!"keyword".equals(properties.path("uuid").path("type").asText())
+                    || properties.path("ordinal").isMissingNode() || properties.path("segmentCount").isMissingNode()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Checks if the index exists in the OpenSearch cluster.
      *
@@ -2,9 +2,8 @@ package org.alfresco.opensearch.index;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.Response;
 import org.opensearch.client.RestClient;
@@ -70,16 +69,15 @@ public class Model {
      */
     public String getModelId() throws Exception {
         Request request = new Request("POST", "/_plugins/_ml/models/_search");
-        String jsonString = """
-                {
-                  "query": {
-                    "match": {
-                      "name": "%s"
-                    }
-                  }
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, modelName), ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("match");
+            generator.writeStringField("name", modelName);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
         Response response = restClient().performRequest(request);
 
         ObjectMapper objectMapper = new ObjectMapper();
@@ -96,15 +94,14 @@ public class Model {
      */
     private String registerModel(String modelGroupId) throws IOException {
         Request request = new Request("POST", "/_plugins/_ml/models/_register");
-        String jsonString = """
-                {
-                  "name": "%s",
-                  "version": "1.0.1",
-                  "model_group_id": "%s",
-                  "model_format": "TORCH_SCRIPT"
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, modelName, modelGroupId), ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("name", modelName);
+            generator.writeStringField("version", "1.0.1");
+            generator.writeStringField("model_group_id", modelGroupId);
+            generator.writeStringField("model_format", "TORCH_SCRIPT");
+            generator.writeEndObject();
+        }));
         Response response = restClient().performRequest(request);
 
         ObjectMapper objectMapper = new ObjectMapper();
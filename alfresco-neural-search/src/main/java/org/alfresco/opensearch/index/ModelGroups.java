@@ -2,9 +2,8 @@ package org.alfresco.opensearch.index;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.Response;
 import org.opensearch.client.RestClient;
@@ -47,14 +46,13 @@ public class ModelGroups {
      */
     public String apply() throws IOException {
         Request request = new Request("POST", "/_plugins/_ml/model_groups/_register");
-        String jsonString = """
-                {
-                  "name": "%s",
-                  "description": "A model group for NLP models",
-                  "access_mode": "public"
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, modelGroupName), ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("name", modelGroupName);
+            generator.writeStringField("description", "A model group for NLP models");
+            generator.writeStringField("access_mode", "public");
+            generator.writeEndObject();
+        }));
         Response response = restClient().performRequest(request);
 
         ObjectMapper objectMapper = new ObjectMapper();
@@ -75,16 +73,15 @@ public class ModelGroups {
      */
     public String getModelGroupId() throws IOException {
         Request request = new Request("POST", "/_plugins/_ml/model_groups/_search");
-        String jsonString = """
-                {
-                  "query": {
-                    "match": {
-                      "name": "%s"
-                    }
-                  }
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, modelGroupName), ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("match");
+            generator.writeStringField("name", modelGroupName);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
         Response response = restClient().performRequest(request);
 
         ObjectMapper objectMapper = new ObjectMapper();
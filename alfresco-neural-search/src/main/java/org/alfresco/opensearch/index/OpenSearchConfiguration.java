@@ -3,11 +3,13 @@ package org.alfresco.opensearch.index;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.CountDownLatch;
 
 import org.alfresco.opensearch.ingest.Indexer;
+import org.alfresco.opensearch.ingest.state.NodeStateStore;
 
 /**
  * Component for managing OpenSearch configuration settings, including cluster settings, model groups, models, pipelines, and indices.
@@ -17,6 +19,9 @@ public class OpenSearchConfiguration {
 
     static final Logger LOG = LoggerFactory.getLogger(OpenSearchConfiguration.class);
 
+    @Value("${opensearch.index.name}")
+    private String indexName;
+
     @Autowired
     private ClusterSettings clusterSettings;
 
@@ -35,6 +40,9 @@ public class OpenSearchConfiguration {
     @Autowired
     private Indexer indexer;
 
+    @Autowired
+    private NodeStateStore nodeStateStore;
+
     private String modelGroupId;
     private String modelId;
 
@@ -43,18 +51,29 @@ public class OpenSearchConfiguration {
 
     /**
      * Applies OpenSearch configuration settings.
-     * If the index exists, retrieves existing model group ID and model ID.
+     * If the index exists, checks that it has the mapping of the segments and retrieves existing model group ID and
+     * model ID. An index created by a previous release is refused, since it has to be indexed again.
      * Otherwise, applies cluster settings, registers model group, model, pipeline, and creates index.
+     * The node state store is reset when the index is created, and rebuilt from the existing index when requested.
      *
+     * @param rebuildState true to rebuild the node state store from the existing index
      * @throws Exception if an error occurs during the application of configuration settings
      */
-    public void apply() throws Exception {
+    public void apply(boolean rebuildState) throws Exception {
         LOG.info("-- CONFIG --");
         if (index.existIndex()) {
+            if (!index.hasSegmentMapping(indexName)) {
+                throw new IllegalStateException("Index " + indexName + " has been created by a previous release "
+                        + "without the uuid, ordinal and segmentCount fields: delete it together with the "
+                        + "alfresco-control index to index the repository again");
+            }
             // If index exists, retrieve existing model group ID and model ID
             modelGroupId = modelGroups.getModelGroupId();
             modelId = model.getModelId();
             LOG.info("CONFIG: Index ready and model with id {} already available!", modelId);
+            if (rebuildState) {
+                nodeStateStore.rebuild();
+            }
         } else {
             // Apply cluster settings, register model group, model, pipeline, and create index
             clusterSettings.apply();
@@ -64,6 +83,7 @@ public class OpenSearchConfiguration {
             index.createKnnIndex();
             index.createAlfrescoIndex();
             indexer.verifyIndexStatus();
+            nodeStateStore.reset();
             LOG.info("CONFIG: Index configured and model with id {} deployed!", modelId);
         }
         LOG.info("-- CONFIG --");
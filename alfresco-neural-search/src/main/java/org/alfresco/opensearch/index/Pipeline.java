@@ -1,8 +1,7 @@
 package org.alfresco.opensearch.index;
 
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.RestClient;
 import org.slf4j.Logger;
@@ -45,50 +44,48 @@ public class Pipeline {
     public void apply(String modelId) throws IOException {
         // Ingest pipeline
         Request request = new Request("PUT", "/_ingest/pipeline/" + ingestPipelineName);
-        String ingestJsonString = """
-                {
-                  "description": "An NLP ingest pipeline",
-                  "processors": [
-                    {
-                      "text_embedding": {
-                        "model_id": "%s",
-                        "field_map": {
-                          "text": "passage_embedding"
-                        }
-                      }
-                    }
-                  ]
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(ingestJsonString, modelId), ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("description", "An NLP ingest pipeline");
+            generator.writeArrayFieldStart("processors");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("text_embedding");
+            generator.writeStringField("model_id", modelId);
+            generator.writeObjectFieldStart("field_map");
+            generator.writeStringField("text", "passage_embedding");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
         restClient().performRequest(request);
 
         // Search pipeline using 30% / 70% weight for text / neural retrieval
         request = new Request("PUT", "/_search/pipeline/" + ingestPipelineName);
-        String searchJsonString = """
-                {
-                  "description": "Post processor for hybrid search",
-                  "phase_results_processors": [
-                    {
-                      "normalization-processor": {
-                        "normalization": {
-                          "technique": "min_max"
-                        },
-                        "combination": {
-                          "technique": "arithmetic_mean",
-                          "parameters": {
-                            "weights": [
-                              0.3,
-                              0.7
-                            ]
-                          }
-                        }
-                      }
-                    }
-                  ]
-                }
-                """;
-        request.setEntity(new StringEntity(searchJsonString, ContentType.APPLICATION_JSON));
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("description", "Post processor for hybrid search");
+            generator.writeArrayFieldStart("phase_results_processors");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("normalization-processor");
+            generator.writeObjectFieldStart("normalization");
+            generator.writeStringField("technique", "min_max");
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("combination");
+            generator.writeStringField("technique", "arithmetic_mean");
+            generator.writeObjectFieldStart("parameters");
+            generator.writeArrayFieldStart("weights");
+            generator.writeNumber(0.3);
+            generator.writeNumber(0.7);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
         restClient().performRequest(request);
 
         LOG.info("Ingest and search pipeline {} has been configured", ingestPipelineName);
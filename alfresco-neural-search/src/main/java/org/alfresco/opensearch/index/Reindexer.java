@@ -0,0 +1,331 @@
+package org.alfresco.opensearch.index;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
+import org.alfresco.opensearch.client.OpenSearchClientFactory;
+import org.alfresco.opensearch.ingest.Indexer;
+import org.alfresco.repo.service.IndexingProgress;
+import org.opensearch.client.Request;
+import org.opensearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds the index into a new versioned index without downtime, so the mapping or the embedding model can be
+ * changed while searches keep being served by the current index.
+ * <p>
+ * The new version is created with the current settings and mappings, and every write of the indexer is applied to
+ * it as well as to the current version while the rebuild runs. The segments of the current version are copied by a
+ * background {@code _reindex} task throttled to {@code opensearch.reindex.requestsPerSecond}, without their
+ * embeddings, so the ingest pipeline of the new version computes them again. The copy never overwrites a segment
+ * written by the indexer in the meantime, and the documents deleted during the copy are copied again from the
+ * current version once it completes. The index alias is then moved to the new version in a single atomic request.
+ * <p>
+ * The rebuild re-uses the text of the indexed segments, so a change of the chunking settings requires the
+ * documents to be read again from the repository instead. So does an index created by a previous release, whose
+ * segments lack the UUID and ordinal every write of this release relies on, and the rebuild refuses it.
+ * <p>
+ * The dual write is applied by the indexer of this instance only, so the rebuild is refused when several instances
+ * share the index, see {@code batch.indexer.coordination.enabled}.
+ */
+@Component
+public class Reindexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Reindexer.class);
+
+    // Fields copied from the current version, the embeddings are computed again by the ingest pipeline
+    private static final List<String> SOURCE_FIELDS =
+            List.of("id", "uuid", "ordinal", "segmentCount", "dbid", "contentId", "name", "text");
+
+    @Value("${opensearch.index.name}")
+    private String indexName;
+
+    @Value("${opensearch.reindex.requestsPerSecond}")
+    private float requestsPerSecond;
+
+    @Value("${opensearch.reindex.pollInterval}")
+    private long pollInterval;
+
+    @Value("${opensearch.reindex.deleteOldIndex}")
+    private boolean deleteOldIndex;
+
+    @Value("${batch.indexer.coordination.enabled}")
+    private boolean coordinated;
+
+    @Autowired
+    private OpenSearchClientFactory openSearchClientFactory;
+
+    @Autowired
+    private Index index;
+
+    @Autowired
+    private Indexer indexer;
+
+    @Autowired
+    private IndexingProgress indexingProgress;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile String targetIndex;
+    private volatile long total = 0;
+    private volatile long copied = 0;
+
+    /**
+     * Retrieves an instance of RestClient from the factory.
+     *
+     * @return RestClient instance
+     */
+    private RestClient restClient() {
+        return openSearchClientFactory.getRestClient();
+    }
+
+    /**
+     * Starts rebuilding the index into a new version in a background thread.
+     *
+     * @return true if the rebuild has been started, false if a rebuild is already running or the index is shared
+     * with other instances
+     */
+    public boolean start() {
+        if (coordinated) {
+            LOG.error("Index {} cannot be rebuilt while batch.indexer.coordination.enabled is true, since the writes "
+                    + "of the other instances would not reach the new version", indexName);
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            LOG.warn("Index {} is already being rebuilt into {}", indexName, targetIndex);
+            return false;
+        }
+        Thread thread = new Thread(this::rebuild, "reindex");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Checks whether a rebuild is running.
+     *
+     * @return true if a rebuild is running
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Gets the versioned index being built.
+     *
+     * @return the name of the new version, or null if no rebuild has been started
+     */
+    public String getTargetIndex() {
+        return targetIndex;
+    }
+
+    /**
+     * Gets the number of segments to copy from the current version, as reported by the reindex task.
+     *
+     * @return the number of segments to copy
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the number of segments copied from the current version, as reported by the reindex task.
+     *
+     * @return the number of copied segments
+     */
+    public long getCopied() {
+        return copied;
+    }
+
+    /**
+     * Rebuilds the index into a new version and moves the alias to it. When the rebuild fails before the alias is
+     * moved, the new version is deleted and the current version is left untouched. An index created by a previous
+     * release is left untouched as well.
+     */
+    private void rebuild() {
+        String source = null;
+        boolean created = false;
+        boolean swapped = false;
+        try {
+            source = index.getAliasTarget();
+            if (!index.hasSegmentMapping(source)) {
+                throw new IllegalStateException("Index " + source + " has been created by a previous release and "
+                        + "has to be indexed again from the repository");
+            }
+            String target = index.getNextVersion(source);
+            targetIndex = target;
+            total = 0;
+            copied = 0;
+            LOG.info("Rebuilding index {} into {}", source, target);
+
+            index.createKnnIndex(target, false);
+            created = true;
+            indexer.startDualWrite(target);
+
+            waitForTask(startCopy(source, target));
+            String current = source;
+            int replayed = indexer.replayDeletes(uuids -> copyDocuments(current, target, uuids));
+            LOG.info("Index {} has been copied into {}, {} documents with deletes replayed", source, target, replayed);
+
+            index.swapAlias(source, target);
+            swapped = true;
+            indexingProgress.recordIndexChange();
+            indexer.stopDualWrite();
+            if (deleteOldIndex && !source.equals(indexName)) {
+                index.deleteIndex(source);
+            }
+            LOG.info("Index {} has been rebuilt into {}", indexName, target);
+        } catch (Exception e) {
+            LOG.error("Index {} has not been rebuilt due to the Exception: {}", indexName, e.getMessage());
+            LOG.debug(e.getMessage(), e);
+            if (!swapped) {
+                abort(created);
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Stops the dual write of a failed rebuild and deletes the new version.
+     *
+     * @param created true if the new version has been created
+     */
+    private void abort(boolean created) {
+        try {
+            indexer.stopDualWrite();
+            if (created) {
+                index.deleteIndex(targetIndex);
+            }
+        } catch (Exception e) {
+            LOG.warn("Index {} has not been cleaned up due to the Exception: {}", targetIndex, e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a throttled background {@code _reindex} task copying every segment of the current version.
+     * Segments already written to the new version are skipped, so the copy never overwrites a newer segment.
+     *
+     * @param source the current version
+     * @param target the new version
+     * @return the id of the reindex task
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
+     */
+    private String startCopy(String source, String target) throws IOException {
+        Request request = new Request("POST", "/_reindex");
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", "auto");
+        request.addParameter("requests_per_second", requestsPerSecond > 0 ? Float.toString(requestsPerSecond) : "-1");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("conflicts", "proceed");
+            writeSource(generator, source);
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("dest");
+            generator.writeStringField("index", target);
+            generator.writeStringField("op_type", "create");
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode response = objectMapper.readTree(restClient().performRequest(request).getEntity().getContent());
+        String taskId = response.path("task").asText();
+        LOG.info("Reindex task {} copying {} into {} at {} requests per second", taskId, source, target,
+                requestsPerSecond > 0 ? requestsPerSecond : "unlimited");
+        return taskId;
+    }
+
+    /**
+     * Polls a reindex task every {@code opensearch.reindex.pollInterval} milliseconds until it completes.
+     *
+     * @param taskId the id of the reindex task
+     * @throws IOException if the task fails or an I/O error occurs while interacting with OpenSearch
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void waitForTask(String taskId) throws IOException, InterruptedException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        while (true) {
+            Request request = new Request("GET", "/_tasks/" + taskId);
+            JsonNode response = objectMapper.readTree(restClient().performRequest(request).getEntity().getContent());
+            JsonNode status = response.path("task").path("status");
+            total = status.path("total").asLong();
+            copied = status.path("created").asLong() + status.path("version_conflicts").asLong();
+            if (response.path("completed").asBoolean()) {
+                if (response.has("error")) {
+                    throw new IOException("Reindex task " + taskId + " failed: " + response.path("error"));
+                }
+                if (!response.path("response").path("failures").isEmpty()) {
+                    throw new IOException("Reindex task " + taskId + " failed: "
+                            + response.path("response").path("failures"));
+                }
+                return;
+            }
+            LOG.info("Reindex task {}: {} of {} segments copied", taskId, copied, total);
+            TimeUnit.MILLISECONDS.sleep(pollInterval);
+        }
+    }
+
+    /**
+     * Copies every segment of a batch of documents from the current version, overwriting their segments in the new
+     * version.
+     *
+     * @param source the current version
+     * @param target the new version
+     * @param uuids the UUIDs of the documents
+     * @throws IOException if some segments are not copied or an I/O error occurs while interacting with OpenSearch
+     */
+    private void copyDocuments(String source, String target, List<String> uuids) throws IOException {
+        Request request = new Request("POST", "/_reindex");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            writeSource(generator, source);
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("terms");
+            generator.writeArrayFieldStart("uuid");
+            for (String uuid : uuids) {
+                generator.writeString(uuid);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("dest");
+            generator.writeStringField("index", target);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode response = objectMapper.readTree(restClient().performRequest(request).getEntity().getContent());
+        if (!response.path("failures").isEmpty()) {
+            throw new IOException("Documents have not been copied: " + response.path("failures"));
+        }
+    }
+
+    /**
+     * Starts the source of a reindex request, listing the copied fields. The source object is left open, so a
+     * query can be added to it.
+     *
+     * @param generator the generator of the request body
+     * @param source the index to copy from
+     * @throws IOException if an error occurs while writing the source
+     */
+    private static void writeSource(JsonGenerator generator, String source) throws IOException {
+        generator.writeObjectFieldStart("source");
+        generator.writeStringField("index", source);
+        generator.writeArrayFieldStart("_source");
+        for (String field : SOURCE_FIELDS) {
+            generator.writeString(field);
+        }
+        generator.writeEndArray();
+    }
+
+}
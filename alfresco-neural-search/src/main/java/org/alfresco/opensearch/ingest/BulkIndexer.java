@@ -0,0 +1,499 @@
+package org.alfresco.opensearch.ingest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.alfresco.opensearch.client.JsonBody;
+import org.alfresco.repo.service.IndexingProgress;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.client.ResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Component collecting document segments into OpenSearch {@code _bulk} requests.
+ * <p>
+ * Pending operations are flushed when the number of operations reaches {@code opensearch.bulk.maxActions},
+ * when the request body reaches {@code opensearch.bulk.maxBytes} or when the oldest pending operation has been
+ * waiting for {@code opensearch.bulk.flushInterval} milliseconds. Items rejected by OpenSearch with a transient
+ * error are retried individually, without re-sending the items that were accepted, and handed over to the
+ * {@link RetryJournal} when they still fail, unless a newer operation for the same segment has been added since.
+ * Items rejected with a permanent error go to its dead-letter file.
+ * <p>
+ * Every operation is encoded once to UTF-8 NDJSON lines when it is added, and the bulk request streams the
+ * encoded operations without copying them into a single body.
+ * <p>
+ * Pending operations are split into {@code opensearch.ingest.maxInFlightRequests} stripes by the UUID of their
+ * document, so up to that many bulk requests are in flight at the same time. The operations of a stripe are swapped
+ * out under its lock and sent outside of it, so adding an operation never waits for a request. Batches of the same
+ * stripe are sent one after the other, so the operations of a document segment reach OpenSearch in the order they
+ * were added, as routed by the index stage of the pipeline.
+ */
+@Component
+public class BulkIndexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkIndexer.class);
+
+    // Delay before retrying the first batch of failed items, doubled on every attempt
+    private static final long RETRY_DELAY_MS = 500;
+
+    @Value("${opensearch.index.name}")
+    private String indexName;
+
+    @Value("${opensearch.bulk.maxActions}")
+    private int maxActions;
+
+    @Value("${opensearch.bulk.maxBytes}")
+    private long maxBytes;
+
+    @Value("${opensearch.bulk.flushInterval}")
+    private long flushInterval;
+
+    @Value("${opensearch.bulk.maxRetries}")
+    private int maxRetries;
+
+    @Value("${opensearch.ingest.maxInFlightRequests}")
+    private int stripeCount;
+
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+
+    @Autowired
+    private RetryJournal retryJournal;
+
+    @Autowired
+    private IndexingProgress indexingProgress;
+
+    private Stripe[] stripes;
+
+    /**
+     * Creates the stripes of pending operations.
+     */
+    @PostConstruct
+    public void init() {
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds an index operation for a document segment, flushing the pending operations if a threshold is reached.
+     *
+     * @param targetIndex the index to write to, or null for the index alias
+     * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param dbid the ID of the document in the database
+     * @param contentId the id of the content
+     * @param name the name of the document
+     * @param text the text content of the segment
+     */
+    public void index(String targetIndex, String uuid, int ordinal, Integer segmentCount, Long dbid, String contentId,
+                      String name, String text) {
+        add(indexOperation(targetIndex, uuid, ordinal, segmentCount, dbid, contentId, name, text));
+    }
+
+    /**
+     * Builds the index operation of a document segment.
+     *
+     * @param targetIndex the index to write to, or null for the index alias
+     * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param dbid the ID of the document in the database
+     * @param contentId the id of the content
+     * @param name the name of the document
+     * @param text the text content of the segment
+     * @return the operation
+     */
+    static BulkOperation indexOperation(String targetIndex, String uuid, int ordinal, Integer segmentCount, Long dbid,
+                                        String contentId, String name, String text) {
+        String segmentId = Indexer.segmentId(uuid, ordinal);
+        return new BulkOperation(operationId(targetIndex, segmentId), false, encode(generator -> {
+            writeAction(generator, "index", targetIndex, segmentId);
+            Indexer.writeSegment(generator, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+        }));
+    }
+
+    /**
+     * Adds a delete operation for a document segment, flushing the pending operations if a threshold is reached.
+     *
+     * @param targetIndex the index to delete from, or null for the index alias
+     * @param segmentId the id of the segment
+     */
+    public void delete(String targetIndex, String segmentId) {
+        add(new BulkOperation(operationId(targetIndex, segmentId), true,
+                encode(generator -> writeAction(generator, "delete", targetIndex, segmentId))));
+    }
+
+    /**
+     * Builds the id of a bulk operation, the id of the segment prefixed with the target index when the operation
+     * does not apply to the index alias, so the operations of the alias and of a shadow index are journaled apart.
+     *
+     * @param targetIndex the index of the operation, or null for the index alias
+     * @param segmentId the id of the segment
+     * @return the id of the operation
+     */
+    private static String operationId(String targetIndex, String segmentId) {
+        return targetIndex == null ? segmentId : targetIndex + "/" + segmentId;
+    }
+
+    /**
+     * Writes the action line of a bulk operation.
+     *
+     * @param generator the generator of the operation
+     * @param action the name of the action
+     * @param targetIndex the index of the operation, or null for the index of the request
+     * @param id the id of the document affected by the operation
+     * @throws IOException if an error occurs while writing the line
+     */
+    private static void writeAction(JsonGenerator generator, String action, String targetIndex, String id)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(action);
+        if (targetIndex != null) {
+            generator.writeStringField("_index", targetIndex);
+        }
+        generator.writeStringField("_id", id);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Encodes the lines of a bulk operation.
+     *
+     * @param writer the writer of the lines
+     * @return the UTF-8 bytes of the lines
+     */
+    static byte[] encode(JsonBody.Writer writer) {
+        try {
+            return JsonBody.lines(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds an operation to the pending bulk request of its stripe, discarding any journaled operation for the same
+     * segment, and flushes the stripe if a threshold is reached. The journaled operation is discarded once the
+     * operation is pending, so an older operation failing meanwhile is either discarded or not journaled at all,
+     * see {@link #journal(Stripe, List, List)}.
+     *
+     * @param operation the operation to add
+     */
+    private void add(BulkOperation operation) {
+        Stripe stripe = stripe(operation);
+        boolean full;
+        synchronized (stripe) {
+            if (stripe.pending.isEmpty()) {
+                stripe.oldestPendingTime = System.currentTimeMillis();
+            }
+            stripe.pending.add(operation);
+            stripe.pendingBytes += operation.size();
+            full = stripe.pending.size() >= maxActions || stripe.pendingBytes >= maxBytes;
+        }
+        retryJournal.discard(operation.id());
+        if (full) {
+            flush(stripe);
+        }
+    }
+
+    /**
+     * Flushes the pending operations of every stripe whose oldest operation has been waiting longer than the flush
+     * interval.
+     */
+    @Scheduled(fixedDelayString = "${opensearch.bulk.flushInterval}")
+    public void flushIfDue() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            boolean due;
+            synchronized (stripe) {
+                due = !stripe.pending.isEmpty() && now - stripe.oldestPendingTime >= flushInterval;
+            }
+            if (due) {
+                flush(stripe);
+            }
+        }
+    }
+
+    /**
+     * Sends every pending operation to OpenSearch, retrying failed items individually.
+     * When this method returns, all operations have been either accepted by OpenSearch or journaled for a later retry.
+     */
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            flush(stripe);
+        }
+    }
+
+    /**
+     * Sends the pending operations of a stripe to OpenSearch, retrying failed items individually. The operations
+     * are swapped out under the lock of the stripe, and sent while holding its send lock only, so operations can
+     * still be added to the stripe meanwhile and are sent by the next flush.
+     *
+     * @param stripe the stripe to flush
+     */
+    private void flush(Stripe stripe) {
+        stripe.sendLock.lock();
+        try {
+            List<BulkOperation> operations;
+            synchronized (stripe) {
+                if (stripe.pending.isEmpty()) {
+                    return;
+                }
+                operations = stripe.pending;
+                stripe.pending = new ArrayList<>();
+                stripe.pendingBytes = 0;
+            }
+
+            List<BulkOperation> batch = operations;
+            int attempt = 0;
+            while (!operations.isEmpty()) {
+                List<BulkOperation> retryable = send(operations);
+                if (retryable.isEmpty()) {
+                    break;
+                }
+                if (attempt >= maxRetries) {
+                    journal(stripe, batch, retryable);
+                    break;
+                }
+                attempt++;
+                LOG.debug("Retrying {} failed bulk items (attempt {})", retryable.size(), attempt);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    journal(stripe, batch, retryable);
+                    break;
+                }
+                operations = retryable;
+            }
+        } finally {
+            stripe.sendLock.unlock();
+        }
+    }
+
+    /**
+     * Journals the operations of a batch that still fail, skipping the ones superseded by a later operation for the
+     * same segment, either in the same batch or added to the stripe since the batch was swapped out. Batches of a
+     * stripe are sent one after the other, so a newer operation cannot have been acknowledged yet. The check runs
+     * under the lock of the stripe, since {@link #add(BulkOperation)} discards the journaled operation only once
+     * the newer operation is pending.
+     *
+     * @param stripe the stripe of the batch
+     * @param batch the operations of the batch, in the order they were added
+     * @param failed the operations of the batch that still fail
+     */
+    private void journal(Stripe stripe, List<BulkOperation> batch, List<BulkOperation> failed) {
+        Map<String, byte[]> latest = new HashMap<>();
+        for (BulkOperation operation : batch) {
+            latest.put(operation.id(), operation.lines());
+        }
+        synchronized (stripe) {
+            Set<String> pending = new HashSet<>();
+            for (BulkOperation operation : stripe.pending) {
+                pending.add(operation.id());
+            }
+            for (BulkOperation operation : failed) {
+                if (latest.get(operation.id()) != operation.lines() || pending.contains(operation.id())) {
+                    LOG.debug("Segment {} failed, superseded by a newer operation: {}",
+                            operation.id(), operation.error());
+                    continue;
+                }
+                retryJournal.add(operation);
+            }
+        }
+    }
+
+    /**
+     * Retries the journaled operations that are due, in batches of {@code opensearch.bulk.maxActions} operations.
+     * The operations of a stripe are retried while holding its send lock, and only while they are still journaled,
+     * so a retry is never sent after a newer operation for the same segment.
+     */
+    @Scheduled(fixedDelayString = "${opensearch.retry.interval}")
+    public void retryJournaled() {
+        List<BulkOperation> due = retryJournal.due(System.currentTimeMillis());
+        if (due.isEmpty()) {
+            return;
+        }
+        LOG.info("Retrying {} journaled operations", due.size());
+        boolean changed = false;
+        Map<Stripe, List<BulkOperation>> dueByStripe = new HashMap<>();
+        for (BulkOperation operation : due) {
+            dueByStripe.computeIfAbsent(stripe(operation), stripe -> new ArrayList<>()).add(operation);
+        }
+        for (Map.Entry<Stripe, List<BulkOperation>> stripeEntry : dueByStripe.entrySet()) {
+            Stripe stripe = stripeEntry.getKey();
+            stripe.sendLock.lock();
+            try {
+                List<BulkOperation> journaled = stripeEntry.getValue().stream()
+                        .filter(retryJournal::isJournaled)
+                        .collect(Collectors.toList());
+                for (int from = 0; from < journaled.size(); from += maxActions) {
+                    List<BulkOperation> operations =
+                            journaled.subList(from, Math.min(journaled.size(), from + maxActions));
+                    Map<String, BulkOperation> retryable = new HashMap<>();
+                    for (BulkOperation operation : send(operations)) {
+                        retryable.put(operation.id(), operation);
+                    }
+                    for (BulkOperation operation : operations) {
+                        if (retryable.containsKey(operation.id())) {
+                            retryJournal.failed(retryable.get(operation.id()));
+                        } else {
+                            retryJournal.succeeded(operation.id());
+                            changed = true;
+                        }
+                    }
+                }
+            } finally {
+                stripe.sendLock.unlock();
+            }
+        }
+        retryJournal.compact();
+        // Retried operations change the index without advancing the checkpoint
+        if (changed) {
+            indexingProgress.recordIndexChange();
+        }
+    }
+
+    /**
+     * Gets the stripe of an operation, selected by the UUID of its document.
+     *
+     * @param operation the operation
+     * @return the stripe of the operation
+     */
+    private Stripe stripe(BulkOperation operation) {
+        return stripes[Math.floorMod(operation.uuid().hashCode(), stripes.length)];
+    }
+
+    /**
+     * Sends a bulk request and parses the per-item results.
+     *
+     * @param operations the operations to send
+     * @return the operations that failed with a retryable error, the rejected ones are sent to the dead-letter file
+     */
+    private List<BulkOperation> send(List<BulkOperation> operations) {
+        Request request = new Request("POST", "/" + indexName + "/_bulk");
+        request.setEntity(JsonBody.ndjson(operations.stream().map(BulkOperation::lines).collect(Collectors.toList())));
+
+        List<BulkOperation> retryable = new ArrayList<>();
+        try {
+            Response response = ingestionExecutor.performRequest(request);
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode jsonResponse = objectMapper.readTree(response.getEntity().getContent());
+            if (!jsonResponse.path("errors").asBoolean()) {
+                return retryable;
+            }
+            JsonNode items = jsonResponse.path("items");
+            for (int i = 0; i < items.size() && i < operations.size(); i++) {
+                JsonNode result = items.get(i).elements().next();
+                int status = result.path("status").asInt();
+                // Deleting a segment that does not exist is not an error
+                if (status >= 300 && !(status == 404 && operations.get(i).delete())) {
+                    BulkOperation operation = operations.get(i).failed(result.path("error").toString());
+                    if (isRetryable(status)) {
+                        retryable.add(operation);
+                    } else {
+                        retryJournal.rejected(operation);
+                    }
+                }
+            }
+        } catch (ResponseException e) {
+            // The whole request has been refused, such as a request too large, so every operation shares its status
+            int status = e.getResponse().getStatusLine().getStatusCode();
+            LOG.warn("Bulk request with {} operations failed with status {}", operations.size(), status);
+            LOG.debug(e.getMessage(), e);
+            for (BulkOperation operation : operations) {
+                if (isRetryable(status)) {
+                    retryable.add(operation.failed(e.getMessage()));
+                } else {
+                    retryJournal.rejected(operation.failed(e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            // The whole request failed, so every operation is retried
+            LOG.warn("Bulk request with {} operations failed due to the Exception: {}", operations.size(), e.getMessage());
+            LOG.debug(e.getMessage(), e);
+            operations.forEach(operation -> retryable.add(operation.failed(e.getMessage())));
+        }
+        return retryable;
+    }
+
+    /**
+     * Checks whether an operation failing with an HTTP status may succeed later: the cluster is overloaded or
+     * failed, as opposed to a permanent error such as a mapping error or a request too large.
+     *
+     * @param status the HTTP status of the failure
+     * @return true if the operation can be retried
+     */
+    static boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * Single operation of a bulk request, made of the action line and the optional source line.
+     *
+     * @param id the id of the operation, the id of the segment prefixed with its index when it is not the alias
+     * @param delete true for delete operations, false for index operations
+     * @param lines the UTF-8 bytes of the NDJSON lines of the operation, including the trailing new line
+     * @param error the last error reported for the operation, if any
+     */
+    record BulkOperation(String id, boolean delete, byte[] lines, String error) {
+
+        BulkOperation(String id, boolean delete, byte[] lines) {
+            this(id, delete, lines, null);
+        }
+
+        long size() {
+            return lines.length;
+        }
+
+        BulkOperation failed(String error) {
+            return new BulkOperation(id, delete, lines, error);
+        }
+
+        /**
+         * Gets the UUID of the document of the operation, from an id in the form [{index}/]{uuid}_{ordinal}.
+         *
+         * @return the UUID of the document
+         */
+        String uuid() {
+            int start = id.lastIndexOf('/') + 1;
+            int end = id.lastIndexOf('_');
+            return end > start ? id.substring(start, end) : id.substring(start);
+        }
+    }
+
+    /**
+     * Pending operations of a stripe, guarded by the stripe itself.
+     */
+    private static class Stripe {
+
+        private List<BulkOperation> pending = new ArrayList<>();
+        private long pendingBytes = 0;
+        private long oldestPendingTime = 0;
+
+        // Held while the operations of the stripe are sent, so its batches reach OpenSearch in order
+        private final ReentrantLock sendLock = new ReentrantLock();
+    }
+
+}
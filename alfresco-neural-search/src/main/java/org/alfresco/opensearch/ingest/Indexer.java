@@ -1,10 +1,11 @@
 package org.alfresco.opensearch.ingest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.HttpEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.Response;
 import org.opensearch.client.RestClient;
@@ -16,23 +17,65 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.util.concurrent.CompletableFuture;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
  * Component for indexing documents into OpenSearch.
+ * <p>
+ * Documents are written to the index alias {@code opensearch.index.name}. While a shadow index is being rebuilt,
+ * every write is applied to the shadow index as well, and the documents deleted in the meantime are recorded so
+ * their deletes can be replayed once the rebuild has copied the documents of the live index.
  */
 @Component
 public class Indexer {
 
     private static final Logger LOG = LoggerFactory.getLogger(Indexer.class);
 
+    // Number of documents per page and keep alive of the scroll context when scanning the index
+    private static final int SCROLL_SIZE = 1000;
+    private static final String SCROLL_KEEP_ALIVE = "5m";
+
+    // Maximum number of documents deleted by a single delete by query request
+    private static final int MAX_DELETE_TERMS = 1000;
+
     @Value("${opensearch.index.name}")
     private String indexName;
 
+    @Value("${opensearch.bulk.enabled}")
+    private boolean bulkEnabled;
+
     @Autowired
     private OpenSearchClientFactory openSearchClientFactory;
 
+    @Autowired
+    private BulkIndexer bulkIndexer;
+
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+
+    @Autowired
+    private RetryJournal retryJournal;
+
+    // UUIDs of the documents with an unknown number of segments waiting to be deleted
+    private final Set<String> pendingDeletes = ConcurrentHashMap.newKeySet();
+
+    // Shadow index receiving a copy of every write during a rebuild, null when there is no rebuild
+    private volatile String shadowIndex;
+
+    // UUIDs of the documents with deleted segments since the dual write started
+    private final Set<String> shadowDeletes = ConcurrentHashMap.newKeySet();
+
+    // Writes hold the read lock, replaying the deletes to the shadow index holds the write lock
+    private final ReadWriteLock dualWriteLock = new ReentrantReadWriteLock();
+
     /**
      * Retrieves an instance of RestClient from the factory.
      *
@@ -43,37 +86,170 @@ public class Indexer {
     }
 
     /**
-     * Indexes a document with the specified UUID and text content into the OpenSearch index.
+     * Builds the deterministic id of a document segment.
      *
      * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @return the id of the segment, in the form {uuid}_{ordinal}
+     */
+    public static String segmentId(String uuid, int ordinal) {
+        return uuid + "_" + ordinal;
+    }
+
+    /**
+     * Indexes a document segment into the OpenSearch index, using {uuid}_{ordinal} as document id, so
+     * re-indexing a document overwrites its previous segments in place.
+     * When bulk mode is enabled, the segment is added to the pending bulk request instead of being sent at once.
+     * A pending delete of the document is sent before the segment is indexed. A segment that cannot be indexed is
+     * journaled by the {@link RetryJournal} to be retried later.
+     *
+     * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param dbid the ID of the document in the database
      * @param contentId the id of the content
-     * @param name the UUID of the document
-     * @param text the text content of the document
-     */
-    public void index(String uuid, Long dbid, String contentId, String name, String text) {
-        if (!text.isEmpty()) {
-            Request request = new Request("POST", "/" + indexName + "/_doc");
-            String jsonString = """
-                    {
-                       "id": "%s",
-                       "dbid": %s,
-                       "contentId": %s,
-                       "name": "%s",
-                       "text": "%s"
-                    }
-                    """;
-            String formattedJson = String.format(jsonString, uuid, dbid, contentId, name, text);
-            request.setEntity(new StringEntity(formattedJson, ContentType.APPLICATION_JSON));
+     * @param name the name of the document
+     * @param text the text content of the segment
+     */
+    public void index(String uuid, int ordinal, Integer segmentCount, Long dbid, String contentId, String name, String text) {
+        if (!pendingDeletes.isEmpty() && pendingDeletes.contains(uuid)) {
+            // The pending delete of a previous version of the document must not remove the new segments
             try {
-                restClient().performRequest(request);
-            } catch (Exception e) {
-                LOG.warn("Following segment has not been indexed due to the Exception: {}", e.getMessage());
-                LOG.debug(e.getMessage(), e);
-                LOG.warn(formattedJson);
+                flushDeletes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+        dualWriteLock.readLock().lock();
+        try {
+            String shadow = shadowIndex;
+            if (bulkEnabled) {
+                bulkIndexer.index(null, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+                if (shadow != null) {
+                    bulkIndexer.index(shadow, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+                }
+            } else {
+                put(null, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+                if (shadow != null) {
+                    put(shadow, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+                }
+            }
+        } finally {
+            dualWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a document segment with a single request, journaling the segment when the request fails with a
+     * transient error, or sending it to the dead-letter file when OpenSearch rejects it with a permanent error.
+     *
+     * @param targetIndex the index to write to, or null for the index alias
+     * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param dbid the ID of the document in the database
+     * @param contentId the id of the content
+     * @param name the name of the document
+     * @param text the text content of the segment
+     */
+    private void put(String targetIndex, String uuid, int ordinal, Integer segmentCount, Long dbid, String contentId,
+                     String name, String text) {
+        BulkIndexer.BulkOperation operation =
+                BulkIndexer.indexOperation(targetIndex, uuid, ordinal, segmentCount, dbid, contentId, name, text);
+        retryJournal.discard(operation.id());
+        String target = targetIndex == null ? indexName : targetIndex;
+        Request request = new Request("PUT", "/" + target + "/_doc/" + segmentId(uuid, ordinal));
+        try {
+            request.setEntity(JsonBody.entity(generator ->
+                    writeSegment(generator, uuid, ordinal, segmentCount, dbid, contentId, name, text)));
+            ingestionExecutor.performRequest(request);
+        } catch (ResponseException e) {
+            LOG.debug(e.getMessage(), e);
+            if (BulkIndexer.isRetryable(e.getResponse().getStatusLine().getStatusCode())) {
+                retryJournal.add(operation.failed(e.getMessage()));
+            } else {
+                retryJournal.rejected(operation.failed(e.getMessage()));
             }
+        } catch (Exception e) {
+            LOG.debug(e.getMessage(), e);
+            retryJournal.add(operation.failed(e.getMessage()));
         }
     }
 
+    /**
+     * Writes the source of a document segment. The segment count is omitted when it is not known.
+     *
+     * @param generator the generator of the request body
+     * @param uuid the UUID of the document
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param dbid the ID of the document in the database
+     * @param contentId the id of the content
+     * @param name the name of the document
+     * @param text the text content of the segment
+     * @throws IOException if an error occurs while writing the source
+     */
+    static void writeSegment(JsonGenerator generator, String uuid, int ordinal, Integer segmentCount, Long dbid,
+                             String contentId, String name, String text) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", segmentId(uuid, ordinal));
+        generator.writeStringField("uuid", uuid);
+        generator.writeNumberField("ordinal", ordinal);
+        if (segmentCount != null) {
+            generator.writeNumberField("segmentCount", segmentCount);
+        }
+        generator.writeNumberField("dbid", dbid);
+        generator.writeFieldName("contentId");
+        generator.writeNumber(contentId);
+        generator.writeStringField("name", name);
+        generator.writeStringField("text", text);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Deletes the segments of a document with ordinals in the range [fromOrdinal, toOrdinal) using a bulk request.
+     * Used to remove the segments left over when a document is re-indexed with fewer segments than before.
+     *
+     * @param uuid the UUID of the document
+     * @param fromOrdinal the first ordinal to delete, inclusive
+     * @param toOrdinal the last ordinal to delete, exclusive
+     */
+    public void deleteSegments(String uuid, int fromOrdinal, int toOrdinal) {
+        dualWriteLock.readLock().lock();
+        try {
+            String shadow = shadowIndex;
+            for (int ordinal = fromOrdinal; ordinal < toOrdinal; ordinal++) {
+                bulkIndexer.delete(null, segmentId(uuid, ordinal));
+                if (shadow != null) {
+                    bulkIndexer.delete(shadow, segmentId(uuid, ordinal));
+                }
+            }
+            if (shadow != null && toOrdinal > fromOrdinal) {
+                shadowDeletes.add(uuid);
+            }
+        } finally {
+            dualWriteLock.readLock().unlock();
+        }
+        if (!bulkEnabled) {
+            bulkIndexer.flush();
+        }
+    }
+
+    /**
+     * Sends every pending bulk operation and pending delete to OpenSearch.
+     *
+     * @throws IOException if the pending deletes could not be sent
+     */
+    public void flush() throws IOException {
+        if (bulkEnabled) {
+            bulkIndexer.flush();
+        }
+        flushDeletes();
+    }
+
     /**
      * Verifies indexing process by using the model is working.
      */
@@ -84,30 +260,19 @@ public class Indexer {
         while (retryCount < 3 && !success) {
             try {
                 Request request = new Request("POST", "/" + indexName + "/_doc");
-                String jsonString = """
-                        {
-                           "id": "%s",
-                           "dbid": %s,
-                           "contentId": %s,
-                           "name": "%s",
-                           "text": "%s"
-                        }
-                        """;
-                String formattedJson = String.format(jsonString, "1", 1L, "1", "verify", "verify");
-                request.setEntity(new StringEntity(formattedJson, ContentType.APPLICATION_JSON));
+                request.setEntity(JsonBody.entity(generator -> {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", "1");
+                    generator.writeNumberField("dbid", 1L);
+                    generator.writeNumberField("contentId", 1L);
+                    generator.writeStringField("name", "verify");
+                    generator.writeStringField("text", "verify");
+                    generator.writeEndObject();
+                }));
                 restClient().performRequest(request);
 
                 request = new Request("POST", "/" + indexName + "/_delete_by_query");
-                jsonString = """
-                        {
-                          "query": {
-                            "match": {
-                              "id": "%s"
-                            }
-                          }
-                        }
-                        """;
-                request.setEntity(new StringEntity(String.format(jsonString, "1"), ContentType.APPLICATION_JSON));
+                request.setEntity(matchQuery("id", "1"));
                 restClient().performRequest(request);
 
                 success = true; // Mark the operation as successful
@@ -127,110 +292,291 @@ public class Indexer {
         }
     }
 
-    public String getContentId(String uuid) throws Exception {
+    /**
+     * Retrieves the content id and the number of segments indexed for a document, reading its first segment by id.
+     * A get by id is real-time, so the result does not depend on the index being refreshed.
+     *
+     * @param uuid the UUID of the document
+     * @return the indexed state of the document, or null if the document is not indexed
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
+     */
+    public SegmentState getSegmentState(String uuid) throws IOException {
+        Request request = new Request("GET", "/" + indexName + "/_doc/" + segmentId(uuid, 0));
+        request.addParameter("_source_includes", "contentId,segmentCount");
+        try {
+            Response response = restClient().performRequest(request);
+            ObjectMapper objectMapper = new ObjectMapper();
+            JsonNode source = objectMapper.readTree(response.getEntity().getContent()).path("_source");
+            return new SegmentState(source.path("contentId").asText(), source.path("segmentCount").asInt());
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                return null;
+            } else {
+                throw e;
+            }
+        }
+    }
 
-        String contentId = "";
+    /**
+     * Scans the first segment of every document of the index, reporting the indexed state of each document.
+     *
+     * @param consumer the consumer of the UUID and indexed state of every document
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
+     */
+    public void scanSegmentStates(BiConsumer<String, SegmentState> consumer) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Request request = new Request("POST", "/" + indexName + "/_search");
+        request.addParameter("scroll", SCROLL_KEEP_ALIVE);
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("size", SCROLL_SIZE);
+            generator.writeArrayFieldStart("_source");
+            generator.writeString("uuid");
+            generator.writeString("contentId");
+            generator.writeString("segmentCount");
+            generator.writeEndArray();
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("term");
+            generator.writeNumberField("ordinal", 0);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
+        JsonNode response = objectMapper.readTree(restClient().performRequest(request).getEntity().getContent());
+        String scrollId = response.path("_scroll_id").asText();
+        try {
+            JsonNode hits = response.path("hits").path("hits");
+            while (!hits.isEmpty()) {
+                for (JsonNode hit : hits) {
+                    JsonNode source = hit.path("_source");
+                    consumer.accept(source.path("uuid").asText(),
+                            new SegmentState(source.path("contentId").asText(), source.path("segmentCount").asInt()));
+                }
+                String currentScrollId = scrollId;
+                request = new Request("POST", "/_search/scroll");
+                request.setEntity(JsonBody.entity(generator -> {
+                    generator.writeStartObject();
+                    generator.writeStringField("scroll", SCROLL_KEEP_ALIVE);
+                    generator.writeStringField("scroll_id", currentScrollId);
+                    generator.writeEndObject();
+                }));
+                response = objectMapper.readTree(restClient().performRequest(request).getEntity().getContent());
+                scrollId = response.path("_scroll_id").asText();
+                hits = response.path("hits").path("hits");
+            }
+        } finally {
+            String currentScrollId = scrollId;
+            request = new Request("DELETE", "/_search/scroll");
+            request.setEntity(JsonBody.entity(generator -> {
+                generator.writeStartObject();
+                generator.writeStringField("scroll_id", currentScrollId);
+                generator.writeEndObject();
+            }));
+            restClient().performRequest(request);
+        }
+    }
 
-        Request request = new Request("GET", "/" + indexName + "/_search");
-        String jsonString = """
-                {
-                  "query": {
-                    "match": {
-                      "id": "%s_*"
-                    }
-                  }
+    /**
+     * Deletes every segment of a document. When the number of indexed segments is known, the segments are deleted
+     * by id with bulk operations. Otherwise the document is added to the pending deletes, which are sent together
+     * as terms queries on the UUID field the next time the indexer is flushed. Journaled operations of the document
+     * are discarded either way, so a retry does not bring back any of its segments.
+     *
+     * @param uuid the UUID of the document
+     * @param segmentCount the number of indexed segments, 0 when it is not known
+     */
+    public void deleteDocument(String uuid, int segmentCount) {
+        retryJournal.discardDocument(uuid);
+        if (segmentCount > 0) {
+            deleteSegments(uuid, 0, segmentCount);
+        } else {
+            dualWriteLock.readLock().lock();
+            try {
+                pendingDeletes.add(uuid);
+                if (shadowIndex != null) {
+                    shadowDeletes.add(uuid);
                 }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, uuid), ContentType.APPLICATION_JSON));
-        Response response = restClient().performRequest(request);
+            } finally {
+                dualWriteLock.readLock().unlock();
+            }
+        }
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonResponse = objectMapper.readTree(response.getEntity().getContent());
-        JsonNode hitsNode = jsonResponse.path("hits").path("hits");
-        if (hitsNode.isArray() && !hitsNode.isEmpty()) {
-            JsonNode firstHitNode = hitsNode.get(0);
-            JsonNode contentIdNode = firstHitNode.path("_source").path("contentId");
-            contentId = contentIdNode.asText();
+    /**
+     * Starts applying every write to a shadow index as well as to the index alias.
+     *
+     * @param shadow the name of the shadow index
+     */
+    public void startDualWrite(String shadow) {
+        dualWriteLock.writeLock().lock();
+        try {
+            shadowDeletes.clear();
+            shadowIndex = shadow;
+        } finally {
+            dualWriteLock.writeLock().unlock();
         }
+        LOG.info("Writes are applied to index {} as well", shadow);
+    }
 
-        return contentId;
+    /**
+     * Stops applying writes to the shadow index.
+     *
+     * @throws IOException if the pending operations of the shadow index could not be sent
+     */
+    public void stopDualWrite() throws IOException {
+        dualWriteLock.writeLock().lock();
+        try {
+            flush();
+            shadowIndex = null;
+            shadowDeletes.clear();
+        } finally {
+            dualWriteLock.writeLock().unlock();
+        }
+    }
 
+    /**
+     * Gets the shadow index receiving a copy of every write.
+     *
+     * @return the name of the shadow index, or null when there is no dual write
+     */
+    public String getShadowIndex() {
+        return shadowIndex;
     }
 
     /**
-     * Deletes document segments from the index if they exist, based on the provided UUID.
+     * Replays the deletes applied since the dual write started to the shadow index, once a copy of the live index
+     * may have brought back deleted segments. Writes are blocked meanwhile. Every pending operation is sent first,
+     * then every segment of the documents with deleted segments is removed from the shadow index and copied again
+     * from the live index, so these documents end up identical in both indices.
      *
-     * @param uuid The UUID of the document to be deleted.
-     * @throws IOException If an I/O exception occurs while interacting with OpenSearch.
+     * @param copier the copier of the segments of a batch of documents from the live index to the shadow index
+     * @return the number of documents replayed
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
      */
-    public void deleteDocumentIfExists(String uuid) throws Exception {
+    public int replayDeletes(DocumentCopier copier) throws IOException {
+        dualWriteLock.writeLock().lock();
+        try {
+            String shadow = shadowIndex;
+            flush();
+            List<String> uuids = new ArrayList<>(shadowDeletes);
+            if (shadow == null || uuids.isEmpty()) {
+                return 0;
+            }
+            restClient().performRequest(new Request("POST", "/" + indexName + "," + shadow + "/_refresh"));
+            for (int from = 0; from < uuids.size(); from += MAX_DELETE_TERMS) {
+                List<String> batch = uuids.subList(from, Math.min(uuids.size(), from + MAX_DELETE_TERMS));
+                deleteByUuid(shadow, batch);
+                copier.copy(batch);
+                batch.forEach(shadowDeletes::remove);
+            }
+            return uuids.size();
+        } finally {
+            dualWriteLock.writeLock().unlock();
+        }
+    }
 
-        Request request = new Request("GET", "/" + indexName + "/_search");
-        String jsonString = """
-                {
-                  "query": {
-                    "match": {
-                      "id": "%s_*"
-                    }
-                  }
-                }
-                """;
-        request.setEntity(new StringEntity(String.format(jsonString, uuid), ContentType.APPLICATION_JSON));
-        Response response = restClient().performRequest(request);
+    /**
+     * Deletes the segments of the pending deletes with one delete by query request per batch of
+     * {@link #MAX_DELETE_TERMS} documents. The pending bulk operations are sent and the index is refreshed first,
+     * so segments still buffered or indexed since the last refresh are deleted as well. Documents stay pending until
+     * their request succeeds.
+     *
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch
+     */
+    private synchronized void flushDeletes() throws IOException {
+        if (pendingDeletes.isEmpty()) {
+            return;
+        }
+        if (bulkEnabled) {
+            bulkIndexer.flush();
+        }
+        // Operations journaled while the deletes were pending precede them, a retry would bring the documents back
+        pendingDeletes.forEach(retryJournal::discardDocument);
+        String shadow = shadowIndex;
+        String targets = shadow == null ? indexName : indexName + "," + shadow;
+        restClient().performRequest(new Request("POST", "/" + targets + "/_refresh"));
+        List<String> uuids = new ArrayList<>(pendingDeletes);
+        for (int from = 0; from < uuids.size(); from += MAX_DELETE_TERMS) {
+            List<String> batch = uuids.subList(from, Math.min(uuids.size(), from + MAX_DELETE_TERMS));
+            deleteByUuid(targets, batch);
+            batch.forEach(pendingDeletes::remove);
+        }
+    }
 
+    /**
+     * Deletes every segment of a batch of documents with a delete by query request.
+     *
+     * @param targets the comma separated names of the indices to delete from
+     * @param uuids the UUIDs of the documents
+     * @throws IOException if an I/O error occurs while interacting with OpenSearch or some segments are not deleted
+     */
+    private void deleteByUuid(String targets, List<String> uuids) throws IOException {
+        Request request = new Request("POST", "/" + targets + "/_delete_by_query");
+        request.addParameter("conflicts", "proceed");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("terms");
+            generator.writeArrayFieldStart("uuid");
+            for (String uuid : uuids) {
+                generator.writeString(uuid);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
+        Response response = ingestionExecutor.performRequest(request);
         ObjectMapper objectMapper = new ObjectMapper();
         JsonNode jsonResponse = objectMapper.readTree(response.getEntity().getContent());
-        int totalValue = jsonResponse.get("hits").get("total").get("value").asInt();
-
-        if (totalValue > 0) {
-            deleteDocument(uuid);
-        }
-
-    }
-
-    /**
-     * Deletes document segments from the index, based on the provided UUID.
-     * Retries deletion asynchronously 3 times (5 sec delay) to handle concurrent document modifications.
-     *
-     * @param uuid The UUID of the document to be deleted.
-     * @throws IOException If an I/O exception occurs while interacting with OpenSearch.
-     */
-    public void deleteDocument(String uuid) throws Exception {
-        CompletableFuture.supplyAsync(() -> {
-            int attempt = 0;
-            while (attempt < 3) {
-                Request request = new Request("POST", "/" + indexName + "/_delete_by_query");
-                String jsonString = """
-                        {
-                          "query": {
-                            "match": {
-                              "id": "%s_*"
-                            }
-                          }
-                        }
-                        """;
-                request.setEntity(new StringEntity(String.format(jsonString, uuid), ContentType.APPLICATION_JSON));
-                try {
-                    Response response = restClient().performRequest(request);
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    JsonNode jsonResponse = objectMapper.readTree(response.getEntity().getContent());
-                    int deleteCount = jsonResponse.get("total").asInt();
-                    if (deleteCount > 0) {
-                        return null;
-                    }
-                } catch (IOException e) {
-                    LOG.warn(e.getMessage());
-                }
-                attempt++;
-                try {
-                    TimeUnit.SECONDS.sleep(5);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            return null;
+        if (!jsonResponse.path("failures").isEmpty()) {
+            throw new IOException("Documents have not been deleted: " + jsonResponse.path("failures"));
+        }
+        LOG.debug("Deleted {} segments of {} documents", jsonResponse.path("deleted").asInt(), uuids.size());
+    }
+
+    /**
+     * Builds the body of a request with a match query on a single field.
+     *
+     * @param field the name of the field
+     * @param value the value to match
+     * @return the request body
+     * @throws IOException if an error occurs while writing the body
+     */
+    private static HttpEntity matchQuery(String field, String value) throws IOException {
+        return JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("match");
+            generator.writeStringField(field, value);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
         });
     }
 
+    /**
+     * Indexed state of a document.
+     *
+     * @param contentId the id of the indexed content
+     * @param segmentCount the number of indexed segments
+     */
+    public record SegmentState(String contentId, int segmentCount) {
+    }
+
+    /**
+     * Copier of the segments of documents from the live index to the shadow index.
+     */
+    @FunctionalInterface
+    public interface DocumentCopier {
+
+        /**
+         * Copies every segment of a batch of documents.
+         *
+         * @param uuids the UUIDs of the documents
+         * @throws IOException if an I/O error occurs while interacting with OpenSearch
+         */
+        void copy(List<String> uuids) throws IOException;
+    }
 
-}
\ No newline at end of file
+}
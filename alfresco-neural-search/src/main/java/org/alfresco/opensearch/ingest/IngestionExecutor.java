@@ -0,0 +1,196 @@
+package org.alfresco.opensearch.ingest;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.alfresco.opensearch.client.OpenSearchClientFactory;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated executor for ingestion I/O, so blocking OpenSearch requests never run on the JVM-wide common pool.
+ * <p>
+ * Tasks run on a bounded pool of {@code opensearch.ingest.threads} platform threads with a bounded queue. When the
+ * queue is full, submitting a task blocks the caller. Independently of the thread that sends it, every ingestion
+ * request to OpenSearch takes a permit from a global limit of {@code opensearch.ingest.maxInFlightRequests}.
+ */
+@Component
+public class IngestionExecutor {
+
+    // Interval at which a caller blocked on a full queue checks whether the pool has been shut down
+    private static final long QUEUE_POLL_INTERVAL_MS = 100;
+
+    @Value("${opensearch.ingest.threads}")
+    private int threads;
+
+    @Value("${opensearch.ingest.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${opensearch.ingest.maxInFlightRequests}")
+    private int maxInFlightRequests;
+
+    @Autowired
+    private OpenSearchClientFactory openSearchClientFactory;
+
+    private ThreadPoolExecutor executor;
+    private Semaphore inFlightRequests;
+
+    // Number of requests that had to wait for a permit
+    private final AtomicLong throttledRequests = new AtomicLong();
+
+    /**
+     * Creates the thread pool and the in-flight request limit.
+     */
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-io-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                this::waitForQueue);
+        inFlightRequests = new Semaphore(maxInFlightRequests, true);
+    }
+
+    /**
+     * Rejection handler blocking the caller until there is room in the queue. The queue is polled so that a task
+     * submitted while the pool shuts down is rejected instead of waiting forever for a queue nobody drains.
+     *
+     * @param runnable the task that did not fit in the queue
+     * @param pool the thread pool
+     * @throws RejectedExecutionException if the pool is shut down, or if interrupted while waiting
+     */
+    private void waitForQueue(Runnable runnable, ThreadPoolExecutor pool) {
+        try {
+            while (!pool.isShutdown()) {
+                if (pool.getQueue().offer(runnable, QUEUE_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    // The pool may have been shut down and drained while the task was queued
+                    if (pool.isShutdown() && pool.remove(runnable)) {
+                        break;
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the ingestion queue", e);
+        }
+        throw new RejectedExecutionException("Ingestion executor has been shut down");
+    }
+
+    /**
+     * Shuts the thread pool down.
+     */
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a task on the ingestion pool.
+     *
+     * @param task the task to run
+     * @return a future completed when the task ends
+     */
+    public CompletableFuture<Void> runAsync(Runnable task) {
+        return CompletableFuture.runAsync(task, executor);
+    }
+
+    /**
+     * Runs a task producing a result on the ingestion pool.
+     *
+     * @param task the task to run
+     * @param <T> the type of the result
+     * @return a future completed with the result of the task
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * Performs an ingestion request to OpenSearch, waiting for a permit when the in-flight request limit is reached.
+     *
+     * @param request the request to perform
+     * @return the response from OpenSearch
+     * @throws IOException if an I/O error occurs, or if interrupted while waiting for a permit
+     */
+    public Response performRequest(Request request) throws IOException {
+        try {
+            if (!inFlightRequests.tryAcquire()) {
+                throttledRequests.incrementAndGet();
+                inFlightRequests.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an in-flight request permit");
+        }
+        try {
+            return openSearchClientFactory.getRestClient().performRequest(request);
+        } finally {
+            inFlightRequests.release();
+        }
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue of the pool.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of threads running tasks.
+     *
+     * @return the number of active threads
+     */
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Gets the number of ingestion requests currently sent to OpenSearch.
+     *
+     * @return the number of in-flight requests
+     */
+    public int getInFlightRequests() {
+        return maxInFlightRequests - inFlightRequests.availablePermits();
+    }
+
+    /**
+     * Gets the number of requests that had to wait because the in-flight request limit was reached.
+     *
+     * @return the number of throttled requests
+     */
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    /**
+     * Gets the saturation of the pool, as the ratio of busy threads and used queue slots to their capacity.
+     *
+     * @return a value between 0 (idle) and 1 (every thread busy and queue full)
+     */
+    public double getSaturation() {
+        return (double) (getActiveThreads() + getQueueDepth()) / (threads + queueCapacity);
+    }
+
+}
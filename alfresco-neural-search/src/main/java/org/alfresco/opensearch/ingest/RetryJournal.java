@@ -0,0 +1,450 @@
+package org.alfresco.opensearch.ingest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local journal of the bulk operations that could not be applied to OpenSearch, so a transient failure such as a
+ * rejected request or a model timeout does not leave a document incomplete once the checkpoint has advanced.
+ * <p>
+ * Failed operations are appended to an NDJSON journal on local disk and retried with an exponential backoff,
+ * starting at {@code opensearch.retry.initialDelay} milliseconds and capped at {@code opensearch.retry.maxDelay}.
+ * An operation still failing after {@code opensearch.retry.maxAttempts} attempts, or rejected with a permanent
+ * error, is moved to a dead-letter NDJSON file, where it can be inspected and replayed by hand.
+ * <p>
+ * A journaled operation is discarded when a newer operation for the same document segment is queued, or when its
+ * document is deleted, so a retry never overwrites a newer version of the segment nor restores a deleted document.
+ * The journal is rewritten with the live operations after every retry pass.
+ */
+@Component
+public class RetryJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryJournal.class);
+
+    // Record types of the journal
+    private static final String PUT = "put";
+    private static final String REMOVE = "remove";
+
+    @Value("${opensearch.retry.enabled}")
+    private boolean enabled;
+
+    @Value("${opensearch.retry.path}")
+    private String path;
+
+    @Value("${opensearch.retry.deadLetterPath}")
+    private String deadLetterPath;
+
+    @Value("${opensearch.retry.maxAttempts}")
+    private int maxAttempts;
+
+    @Value("${opensearch.retry.initialDelay}")
+    private long initialDelay;
+
+    @Value("${opensearch.retry.maxDelay}")
+    private long maxDelay;
+
+    // Journaled operations by segment id, guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private volatile int size = 0;
+    private long deadLetters = 0;
+
+    private FileChannel journal;
+    private FileChannel deadLetter;
+
+    /**
+     * Operation waiting to be retried.
+     *
+     * @param operation the failed operation
+     * @param attempts the number of failed attempts
+     * @param nextAttempt the time of the next attempt in milliseconds since the epoch
+     */
+    record Entry(BulkIndexer.BulkOperation operation, int attempts, long nextAttempt) {
+    }
+
+    /**
+     * Loads the operations of the journal and rewrites it without the superseded records.
+     *
+     * @throws IOException if the journal cannot be read or written
+     */
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path journalPath = Path.of(path);
+        if (journalPath.getParent() != null) {
+            Files.createDirectories(journalPath.getParent());
+        }
+        Path deadLetterFile = Path.of(deadLetterPath);
+        if (deadLetterFile.getParent() != null) {
+            Files.createDirectories(deadLetterFile.getParent());
+        }
+        if (Files.exists(journalPath)) {
+            load(journalPath);
+        }
+        rewrite();
+        deadLetter = FileChannel.open(deadLetterFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        LOG.info("Retry journal loaded from {} with {} operations", journalPath, entries.size());
+    }
+
+    /**
+     * Closes the journal and the dead-letter file.
+     *
+     * @throws IOException if an error occurs while closing the files
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        if (deadLetter != null) {
+            deadLetter.close();
+        }
+    }
+
+    /**
+     * Checks whether the journal is enabled.
+     *
+     * @return true if the journal is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the number of operations waiting to be retried.
+     *
+     * @return the number of journaled operations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of operations moved to the dead-letter file since startup.
+     *
+     * @return the number of dead letters
+     */
+    public synchronized long getDeadLetters() {
+        return deadLetters;
+    }
+
+    /**
+     * Journals an operation that failed with a transient error, to be retried after the initial delay.
+     * The operation is dropped with a warning when the journal is disabled.
+     *
+     * @param operation the failed operation
+     */
+    synchronized void add(BulkIndexer.BulkOperation operation) {
+        if (!enabled) {
+            LOG.warn("Segment {} has not been indexed: {}", operation.id(), operation.error());
+            return;
+        }
+        LOG.debug("Segment {} failed, retrying in {} ms: {}", operation.id(), initialDelay, operation.error());
+        put(new Entry(operation, 1, System.currentTimeMillis() + initialDelay));
+    }
+
+    /**
+     * Discards the journaled operation of a document segment, superseded by a newer operation.
+     *
+     * @param id the id of the segment
+     */
+    void discard(String id) {
+        if (size == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.containsKey(id)) {
+                remove(id);
+            }
+        }
+    }
+
+    /**
+     * Discards every journaled operation of a document, in the index alias and in any shadow index, when the
+     * document is deleted, so a retry never brings back a segment of a deleted document.
+     *
+     * @param uuid the UUID of the document
+     */
+    void discardDocument(String uuid) {
+        if (size == 0) {
+            return;
+        }
+        synchronized (this) {
+            List<String> ids = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (entry.operation().uuid().equals(uuid)) {
+                    ids.add(entry.operation().id());
+                }
+            }
+            ids.forEach(this::remove);
+        }
+    }
+
+    /**
+     * Gets the journaled operations due for a retry.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the due operations, in journal order
+     */
+    synchronized List<BulkIndexer.BulkOperation> due(long now) {
+        List<BulkIndexer.BulkOperation> due = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.nextAttempt() <= now) {
+                due.add(entry.operation());
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Checks whether an operation returned by {@link #due(long)} is still journaled, and has not been discarded or
+     * superseded by a newer operation for the same segment in the meantime.
+     *
+     * @param operation the operation
+     * @return true if the operation is still waiting to be retried
+     */
+    synchronized boolean isJournaled(BulkIndexer.BulkOperation operation) {
+        Entry entry = entries.get(operation.id());
+        return entry != null && entry.operation().lines() == operation.lines();
+    }
+
+    /**
+     * Removes an operation that has been applied by a retry.
+     *
+     * @param id the id of the segment
+     */
+    synchronized void succeeded(String id) {
+        if (entries.containsKey(id)) {
+            remove(id);
+        }
+    }
+
+    /**
+     * Schedules the next attempt of an operation whose retry failed with a transient error, doubling the delay,
+     * or moves it to the dead-letter file when the retry budget is exhausted.
+     *
+     * @param operation the failed operation
+     */
+    synchronized void failed(BulkIndexer.BulkOperation operation) {
+        Entry entry = entries.get(operation.id());
+        if (entry == null) {
+            return;
+        }
+        int attempts = entry.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            remove(operation.id());
+            deadLetter(operation, attempts);
+            return;
+        }
+        long delay = Math.min(maxDelay, initialDelay << Math.min(attempts - 1, 30));
+        put(new Entry(operation, attempts, System.currentTimeMillis() + delay));
+    }
+
+    /**
+     * Moves an operation rejected with a permanent error to the dead-letter file, removing it from the journal.
+     * The operation is dropped with a warning when the journal is disabled.
+     *
+     * @param operation the rejected operation
+     */
+    synchronized void rejected(BulkIndexer.BulkOperation operation) {
+        if (!enabled) {
+            LOG.warn("Segment {} has been rejected: {}", operation.id(), operation.error());
+            return;
+        }
+        Entry entry = entries.get(operation.id());
+        if (entry != null) {
+            remove(operation.id());
+        }
+        deadLetter(operation, entry == null ? 1 : entry.attempts() + 1);
+    }
+
+    /**
+     * Rewrites the journal with the live operations only, replacing the previous journal atomically.
+     */
+    synchronized void compact() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            rewrite();
+        } catch (IOException e) {
+            LOG.warn("Retry journal has not been compacted due to the Exception: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Adds or replaces a journaled operation.
+     *
+     * @param entry the entry of the operation
+     */
+    private void put(Entry entry) {
+        entries.remove(entry.operation().id());
+        entries.put(entry.operation().id(), entry);
+        size = entries.size();
+        append(journal, encode(PUT, entry));
+    }
+
+    /**
+     * Removes a journaled operation.
+     *
+     * @param id the id of the segment
+     */
+    private void remove(String id) {
+        entries.remove(id);
+        size = entries.size();
+        append(journal, BulkIndexer.encode(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("type", REMOVE);
+            generator.writeStringField("id", id);
+            generator.writeEndObject();
+        }));
+    }
+
+    /**
+     * Appends an operation to the dead-letter file.
+     *
+     * @param operation the operation
+     * @param attempts the number of failed attempts
+     */
+    private void deadLetter(BulkIndexer.BulkOperation operation, int attempts) {
+        LOG.warn("Segment {} has been moved to the dead-letter file {} after {} attempts: {}",
+                operation.id(), deadLetterPath, attempts, operation.error());
+        deadLetters++;
+        append(deadLetter, BulkIndexer.encode(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("id", operation.id());
+            generator.writeBooleanField("delete", operation.delete());
+            generator.writeNumberField("attempts", attempts);
+            generator.writeStringField("failedAt", Instant.now().toString());
+            generator.writeStringField("error", operation.error());
+            generator.writeStringField("lines", new String(operation.lines(), StandardCharsets.UTF_8));
+            generator.writeEndObject();
+        }));
+    }
+
+    /**
+     * Encodes a record of the journal.
+     *
+     * @param type the type of the record
+     * @param entry the journaled operation
+     * @return the UTF-8 bytes of the record, including the trailing new line
+     */
+    private static byte[] encode(String type, Entry entry) {
+        BulkIndexer.BulkOperation operation = entry.operation();
+        return BulkIndexer.encode(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("type", type);
+            generator.writeStringField("id", operation.id());
+            generator.writeBooleanField("delete", operation.delete());
+            generator.writeNumberField("attempts", entry.attempts());
+            generator.writeNumberField("nextAttempt", entry.nextAttempt());
+            generator.writeStringField("error", operation.error());
+            generator.writeStringField("lines", new String(operation.lines(), StandardCharsets.UTF_8));
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Appends a line to a file and forces it to disk.
+     *
+     * @param channel the file
+     * @param line the UTF-8 bytes of the line
+     */
+    private static void append(FileChannel channel, byte[] line) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replays the records of the journal. A line that cannot be parsed, such as a line torn by a crash while
+     * appending, is skipped.
+     *
+     * @param journalPath the path of the journal
+     * @throws IOException if the journal cannot be read
+     */
+    private void load(Path journalPath) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode record;
+                try {
+                    record = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    LOG.warn("Skipping invalid record of the retry journal {}", journalPath);
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+                String id = record.path("id").asText();
+                if (PUT.equals(record.path("type").asText())) {
+                    BulkIndexer.BulkOperation operation = new BulkIndexer.BulkOperation(id,
+                            record.path("delete").asBoolean(),
+                            record.path("lines").asText().getBytes(StandardCharsets.UTF_8),
+                            record.path("error").asText(null));
+                    entries.remove(id);
+                    entries.put(id, new Entry(operation, record.path("attempts").asInt(),
+                            record.path("nextAttempt").asLong()));
+                } else {
+                    entries.remove(id);
+                }
+            }
+        }
+        size = entries.size();
+    }
+
+    /**
+     * Writes the live operations to a new journal and replaces the current journal with it.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private void rewrite() throws IOException {
+        Path journalPath = Path.of(path);
+        Path tmpPath = Path.of(path + ".tmp");
+        try (FileChannel tmp = FileChannel.open(tmpPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : entries.values()) {
+                append(tmp, encode(PUT, entry));
+            }
+            tmp.force(true);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(tmpPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+}
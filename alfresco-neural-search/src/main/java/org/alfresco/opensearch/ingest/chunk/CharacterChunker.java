@@ -0,0 +1,61 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Chunker packing whole words into segments of up to 512 characters, regardless of sentence boundaries.
+ */
+@Component
+@ConditionalOnProperty(name = "batch.indexer.chunker.type", havingValue = "character", matchIfMissing = true)
+public class CharacterChunker implements Chunker {
+
+    // Max number of characters in a segment
+    private static final int MAX_CHARACTERS = 512;
+
+    /**
+     * Splits a text into segments of whole words, counting every word as its length plus one separator.
+     *
+     * @param text the text to split
+     * @param segmentConsumer the consumer of the segments, in text order
+     */
+    @Override
+    public void split(CharSequence text, Consumer<String> segmentConsumer) {
+        SentencePacker packer = new SentencePacker(MAX_CHARACTERS, 0, segmentConsumer);
+        Words.forEach(text, (word, start, end) -> addWord(packer, word, start, end));
+        packer.finish();
+    }
+
+    /**
+     * Splits a text read incrementally into segments of whole words.
+     *
+     * @param reader the reader of the text
+     * @param maxCharacters the maximum number of characters to read, or a negative value to read the whole text
+     * @param segmentConsumer the consumer of the segments, in text order
+     * @throws IOException if an error occurs while reading the text
+     */
+    @Override
+    public void split(Reader reader, long maxCharacters, Consumer<String> segmentConsumer) throws IOException {
+        SentencePacker packer = new SentencePacker(MAX_CHARACTERS, 0, segmentConsumer);
+        Words.forEach(reader, maxCharacters, (word, start, end) -> addWord(packer, word, start, end));
+        packer.finish();
+    }
+
+    /**
+     * Adds a word to the packer, counting it as its length plus one separator.
+     *
+     * @param packer the packer of the current text
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     */
+    private static void addWord(SentencePacker packer, CharSequence text, int start, int end) {
+        // Every word closes a "sentence", so segments may end after any word
+        packer.addWord(text, start, end, end - start + 1, true);
+    }
+
+}
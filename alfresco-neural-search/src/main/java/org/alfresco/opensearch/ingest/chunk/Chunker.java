@@ -0,0 +1,46 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits the text content of a document into the segments sent to the embedding model.
+ * The implementation in use is selected with the {@code batch.indexer.chunker.type} property.
+ */
+public interface Chunker {
+
+    /**
+     * Splits a text into segments, handing every segment to the consumer as soon as it is complete.
+     *
+     * @param text the text to split
+     * @param segmentConsumer the consumer of the segments, in text order
+     */
+    void split(CharSequence text, Consumer<String> segmentConsumer);
+
+    /**
+     * Splits a text read incrementally into segments, handing every segment to the consumer as soon as it is
+     * complete. Only the segment being built is held in memory, whatever the size of the text.
+     *
+     * @param reader the reader of the text
+     * @param maxCharacters the maximum number of characters to read, or a negative value to read the whole text
+     * @param segmentConsumer the consumer of the segments, in text order
+     * @throws IOException if an error occurs while reading the text
+     */
+    void split(Reader reader, long maxCharacters, Consumer<String> segmentConsumer) throws IOException;
+
+    /**
+     * Splits a text into segments.
+     *
+     * @param text the text to split
+     * @return the segments, in text order
+     */
+    default List<String> split(CharSequence text) {
+        List<String> segments = new ArrayList<>();
+        split(text, segments::add);
+        return segments;
+    }
+
+}
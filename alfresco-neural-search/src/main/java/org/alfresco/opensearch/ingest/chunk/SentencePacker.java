@@ -0,0 +1,125 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Packs words into segments of up to a maximum number of tokens, cutting only at sentence boundaries.
+ * <p>
+ * Words are accumulated into sentences, and sentences into the current segment. When the next sentence does not
+ * fit, the segment is emitted and the next one starts with the trailing sentences of the previous segment that
+ * fit in the overlap budget. A sentence longer than the maximum is cut at a word boundary.
+ */
+class SentencePacker {
+
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final Consumer<String> segmentConsumer;
+
+    private final Deque<Sentence> sentences = new ArrayDeque<>();
+    private int segmentTokens = 0;
+    // Whether the current segment holds sentences that have not been emitted yet
+    private boolean pending = false;
+    private Sentence current = new Sentence();
+
+    /**
+     * Creates a packer.
+     *
+     * @param maxTokens the maximum number of tokens in a segment
+     * @param overlapTokens the maximum number of tokens repeated at the start of the next segment
+     * @param segmentConsumer the consumer of the segments
+     */
+    SentencePacker(int maxTokens, int overlapTokens, Consumer<String> segmentConsumer) {
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.segmentConsumer = segmentConsumer;
+    }
+
+    /**
+     * Adds a word to the current sentence.
+     *
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     * @param tokens the number of tokens of the word
+     * @param sentenceEnd true if the word ends a sentence
+     */
+    void addWord(CharSequence text, int start, int end, int tokens, boolean sentenceEnd) {
+        if (current.tokens > 0 && current.tokens + tokens > maxTokens) {
+            closeSentence();
+        }
+        current.append(text, start, end, tokens);
+        if (sentenceEnd) {
+            closeSentence();
+        }
+    }
+
+    /**
+     * Emits the last segment, if it contains anything not emitted yet.
+     */
+    void finish() {
+        if (current.tokens > 0) {
+            closeSentence();
+        }
+        if (pending) {
+            emit();
+        }
+    }
+
+    /**
+     * Adds the current sentence to the segment, emitting the segment first when the sentence does not fit.
+     */
+    private void closeSentence() {
+        Sentence sentence = current;
+        current = new Sentence();
+        if (pending && segmentTokens + sentence.tokens > maxTokens) {
+            emit();
+        }
+        // Drop overlapping sentences that would not leave room for the new one
+        while (!sentences.isEmpty() && segmentTokens + sentence.tokens > maxTokens) {
+            segmentTokens -= sentences.removeFirst().tokens;
+        }
+        sentences.addLast(sentence);
+        segmentTokens += sentence.tokens;
+        pending = true;
+    }
+
+    /**
+     * Emits the current segment and keeps its trailing sentences within the overlap budget.
+     */
+    private void emit() {
+        StringBuilder segment = new StringBuilder();
+        for (Sentence sentence : sentences) {
+            if (!segment.isEmpty()) {
+                segment.append(' ');
+            }
+            segment.append(sentence.text);
+        }
+        segmentConsumer.accept(segment.toString());
+        pending = false;
+
+        // Always drop at least one sentence, so the next segment never repeats a whole segment
+        do {
+            segmentTokens -= sentences.removeFirst().tokens;
+        } while (!sentences.isEmpty() && segmentTokens > overlapTokens);
+    }
+
+    /**
+     * Words of a sentence, separated by a single space.
+     */
+    private static class Sentence {
+
+        private final StringBuilder text = new StringBuilder();
+        private int tokens = 0;
+
+        private void append(CharSequence source, int start, int end, int wordTokens) {
+            if (!text.isEmpty()) {
+                text.append(' ');
+            }
+            text.append(source, start, end);
+            tokens += wordTokens;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Chunker packing whole sentences into segments of up to {@code batch.indexer.chunker.maxTokens} model tokens,
+ * counted with the WordPiece vocabulary of the model. Consecutive segments share up to
+ * {@code batch.indexer.chunker.overlapTokens} tokens of trailing sentences.
+ */
+@Component
+@ConditionalOnProperty(name = "batch.indexer.chunker.type", havingValue = "wordpiece")
+public class WordPieceChunker implements Chunker {
+
+    static final Logger LOG = LoggerFactory.getLogger(WordPieceChunker.class);
+
+    @Value("${batch.indexer.chunker.vocabulary}")
+    private String vocabulary;
+
+    @Value("${batch.indexer.chunker.lowercase}")
+    private boolean lowercase;
+
+    @Value("${batch.indexer.chunker.maxTokens}")
+    private int maxTokens;
+
+    @Value("${batch.indexer.chunker.overlapTokens}")
+    private int overlapTokens;
+
+    private WordPieceTokenizer tokenizer;
+
+    /**
+     * Loads the vocabulary of the model from the local file.
+     *
+     * @throws IOException if the vocabulary file cannot be read
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        tokenizer = new WordPieceTokenizer(Path.of(vocabulary), lowercase);
+        LOG.info("WordPiece vocabulary with {} entries loaded from {}", tokenizer.size(), vocabulary);
+    }
+
+    /**
+     * Splits a text into segments of whole sentences, counting tokens with the model vocabulary.
+     *
+     * @param text the text to split
+     * @param segmentConsumer the consumer of the segments, in text order
+     */
+    @Override
+    public void split(CharSequence text, Consumer<String> segmentConsumer) {
+        SentencePacker packer = new SentencePacker(maxTokens, overlapTokens, segmentConsumer);
+        Words.forEach(text, (word, start, end) -> addWord(packer, word, start, end));
+        packer.finish();
+    }
+
+    /**
+     * Splits a text read incrementally into segments of whole sentences.
+     *
+     * @param reader the reader of the text
+     * @param maxCharacters the maximum number of characters to read, or a negative value to read the whole text
+     * @param segmentConsumer the consumer of the segments, in text order
+     * @throws IOException if an error occurs while reading the text
+     */
+    @Override
+    public void split(Reader reader, long maxCharacters, Consumer<String> segmentConsumer) throws IOException {
+        SentencePacker packer = new SentencePacker(maxTokens, overlapTokens, segmentConsumer);
+        Words.forEach(reader, maxCharacters, (word, start, end) -> addWord(packer, word, start, end));
+        packer.finish();
+    }
+
+    /**
+     * Adds a word to the packer, counting its tokens with the model vocabulary.
+     *
+     * @param packer the packer of the current text
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     */
+    private void addWord(SentencePacker packer, CharSequence text, int start, int end) {
+        packer.addWord(text, start, end, tokenizer.countTokens(text, start, end), Words.endsSentence(text, start, end));
+    }
+
+}
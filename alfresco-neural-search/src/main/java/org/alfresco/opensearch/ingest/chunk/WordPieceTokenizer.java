@@ -0,0 +1,171 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts the WordPiece tokens of words using the vocabulary of a BERT-style model, following the same basic
+ * tokenization (lowercasing and accent stripping for uncased models, punctuation and CJK characters as
+ * separate tokens) and greedy longest-match-first sub-word split as the model tokenizer.
+ */
+class WordPieceTokenizer {
+
+    // Prefix of the vocabulary entries continuing a word
+    private static final String CONTINUATION_PREFIX = "##";
+
+    // Words longer than this are mapped to a single unknown token, as BERT tokenizers do
+    private static final int MAX_WORD_CHARACTERS = 100;
+
+    private final Set<String> vocabulary;
+    private final boolean lowercase;
+    private final int maxTokenLength;
+
+    /**
+     * Creates a tokenizer with the vocabulary read from a file with one entry per line (vocab.txt).
+     *
+     * @param vocabularyFile the path to the vocabulary file
+     * @param lowercase true to lowercase and strip accents before tokenizing, as uncased models do
+     * @throws IOException if the vocabulary file cannot be read
+     */
+    WordPieceTokenizer(Path vocabularyFile, boolean lowercase) throws IOException {
+        Set<String> entries = new HashSet<>();
+        int longest = 0;
+        try (BufferedReader reader = Files.newBufferedReader(vocabularyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String entry = line.strip();
+                if (!entry.isEmpty()) {
+                    entries.add(entry);
+                    longest = Math.max(longest, entry.length());
+                }
+            }
+        }
+        this.vocabulary = entries;
+        this.lowercase = lowercase;
+        this.maxTokenLength = longest;
+    }
+
+    /**
+     * Gets the number of entries of the vocabulary.
+     *
+     * @return the vocabulary size
+     */
+    int size() {
+        return vocabulary.size();
+    }
+
+    /**
+     * Counts the tokens of a whitespace free word.
+     *
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     * @return the number of tokens the model produces for the word
+     */
+    int countTokens(CharSequence text, int start, int end) {
+        int tokens = 0;
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (isPunctuation(ch) || isCjk(ch)) {
+                if (i > runStart) {
+                    tokens += countWordPieces(text.subSequence(runStart, i));
+                }
+                tokens++;
+                runStart = i + 1;
+            }
+        }
+        if (end > runStart) {
+            tokens += countWordPieces(text.subSequence(runStart, end));
+        }
+        return tokens;
+    }
+
+    /**
+     * Counts the sub-word pieces of a run of word characters with the greedy longest-match-first algorithm.
+     *
+     * @param run the run of word characters
+     * @return the number of pieces, 1 if the run cannot be represented with the vocabulary
+     */
+    private int countWordPieces(CharSequence run) {
+        String word = normalize(run);
+        if (word.isEmpty()) {
+            return 0;
+        }
+        if (word.length() > MAX_WORD_CHARACTERS) {
+            return 1;
+        }
+        int pieces = 0;
+        int start = 0;
+        while (start < word.length()) {
+            int end = Math.min(word.length(), start + maxTokenLength);
+            boolean found = false;
+            while (end > start) {
+                String piece = start == 0 ? word.substring(start, end) : CONTINUATION_PREFIX + word.substring(start, end);
+                if (vocabulary.contains(piece)) {
+                    found = true;
+                    break;
+                }
+                end--;
+            }
+            if (!found) {
+                // The whole word is mapped to the unknown token
+                return 1;
+            }
+            pieces++;
+            start = end;
+        }
+        return pieces;
+    }
+
+    /**
+     * Applies the lowercasing and accent stripping of uncased models.
+     *
+     * @param run the run of word characters
+     * @return the normalized run
+     */
+    private String normalize(CharSequence run) {
+        String word = run.toString();
+        if (!lowercase) {
+            return word;
+        }
+        word = word.toLowerCase();
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) > 127) {
+                String decomposed = Normalizer.normalize(word, Normalizer.Form.NFD);
+                StringBuilder stripped = new StringBuilder(decomposed.length());
+                for (int j = 0; j < decomposed.length(); j++) {
+                    char ch = decomposed.charAt(j);
+                    if (Character.getType(ch) != Character.NON_SPACING_MARK) {
+                        stripped.append(ch);
+                    }
+                }
+                return stripped.toString();
+            }
+        }
+        return word;
+    }
+
+    private static boolean isPunctuation(char ch) {
+        if ((ch >= 33 && ch <= 47) || (ch >= 58 && ch <= 64) || (ch >= 91 && ch <= 96) || (ch >= 123 && ch <= 126)) {
+            return true;
+        }
+        return switch (Character.getType(ch)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                 Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+                 Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isCjk(char ch) {
+        return (ch >= 0x4E00 && ch <= 0x9FFF) || (ch >= 0x3400 && ch <= 0x4DBF) || (ch >= 0xF900 && ch <= 0xFAFF);
+    }
+
+}
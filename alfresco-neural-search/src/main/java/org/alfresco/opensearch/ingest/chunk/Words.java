@@ -0,0 +1,121 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Scans the whitespace separated words of a text, either held in memory without copying it or read incrementally
+ * from a {@link Reader}.
+ */
+final class Words {
+
+    // Words longer than this are cut, so a long run of text without whitespace never grows the word buffer
+    static final int MAX_WORD_LENGTH = 512;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Receives a word, as the bounds of the word in a character sequence.
+     * The sequence is only valid during the invocation.
+     */
+    @FunctionalInterface
+    interface WordConsumer {
+        void accept(CharSequence text, int start, int end);
+    }
+
+    private Words() {
+    }
+
+    /**
+     * Invokes the consumer with the bounds of every word of the text, in text order.
+     *
+     * @param text the text to scan
+     * @param consumer the consumer of the word bounds
+     */
+    static void forEach(CharSequence text, WordConsumer consumer) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                consumer.accept(text, start, i);
+            }
+        }
+    }
+
+    /**
+     * Invokes the consumer with every word read from the reader, in text order, holding a single word in memory.
+     *
+     * @param reader the reader of the text
+     * @param maxCharacters the maximum number of characters to read, or a negative value to read the whole text
+     * @param consumer the consumer of the words
+     * @throws IOException if an error occurs while reading the text
+     */
+    static void forEach(Reader reader, long maxCharacters, WordConsumer consumer) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder word = new StringBuilder();
+        long remaining = maxCharacters < 0 ? Long.MAX_VALUE : maxCharacters;
+        int read;
+        while (remaining > 0 && (read = reader.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            remaining -= read;
+            for (int i = 0; i < read; i++) {
+                char ch = buffer[i];
+                if (Character.isWhitespace(ch)) {
+                    flush(word, consumer);
+                } else {
+                    word.append(ch);
+                    if (word.length() == MAX_WORD_LENGTH) {
+                        flush(word, consumer);
+                    }
+                }
+            }
+        }
+        flush(word, consumer);
+    }
+
+    /**
+     * Hands the buffered word to the consumer, if any, and clears the buffer.
+     *
+     * @param word the word buffer
+     * @param consumer the consumer of the words
+     */
+    private static void flush(StringBuilder word, WordConsumer consumer) {
+        if (!word.isEmpty()) {
+            consumer.accept(word, 0, word.length());
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * Checks whether a word ends a sentence, ignoring trailing quotes and closing brackets.
+     *
+     * @param text the text containing the word
+     * @param start the start index of the word, inclusive
+     * @param end the end index of the word, exclusive
+     * @return true if the word ends with sentence terminal punctuation
+     */
+    static boolean endsSentence(CharSequence text, int start, int end) {
+        int i = end - 1;
+        while (i > start && isClosing(text.charAt(i))) {
+            i--;
+        }
+        return switch (text.charAt(i)) {
+            case '.', '!', '?', '\u2026', '\u3002', '\uFF01', '\uFF1F' -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isClosing(char ch) {
+        return switch (ch) {
+            case '"', '\'', ')', ']', '}', '\u00BB', '\u201D', '\u2019' -> true;
+            default -> false;
+        };
+    }
+
+}
@@ -0,0 +1,11 @@
+package org.alfresco.opensearch.ingest.state;
+
+/**
+ * Indexed state of a node, as recorded in the {@link NodeStateStore}.
+ *
+ * @param contentId the id of the indexed content
+ * @param segmentCount the number of indexed segments
+ * @param lastTxnId the last transaction in which the node was processed, 0 when unknown
+ */
+public record NodeState(String contentId, int segmentCount, long lastTxnId) {
+}
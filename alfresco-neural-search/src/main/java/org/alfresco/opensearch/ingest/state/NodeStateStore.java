@@ -0,0 +1,487 @@
+package org.alfresco.opensearch.ingest.state;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.alfresco.opensearch.ingest.Indexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Local store of the indexed state of every node, so change detection does not need a request to OpenSearch.
+ * <p>
+ * States are kept in memory and persisted to an append-only log on local disk. Every record of the log carries its
+ * length and a CRC32 checksum. A torn or corrupted tail, left by a crash while appending, is truncated when the log
+ * is loaded. The log is compacted into a snapshot of the live states when it holds too many superseded records.
+ * <p>
+ * Changes are visible at once, but they are only written to the log by {@link #commit(Commit)}. The indexer takes
+ * a {@link Commit} before flushing its pending operations to OpenSearch, and commits it afterwards. The log never
+ * holds a state whose segments have not reached OpenSearch, so it can be trusted after a crash.
+ * <p>
+ * The store is complete when it has been built together with an empty index or rebuilt from the index. A missing
+ * node in a complete store is not indexed. In an incomplete store, a missing node must be looked up in OpenSearch.
+ * When several instances share the index, every instance only keeps the nodes it has indexed, so the store is never
+ * complete.
+ */
+@Component
+public class NodeStateStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeStateStore.class);
+
+    // Record types
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte COMPLETE = 3;
+
+    // Length and checksum preceding the payload of every record
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 64 * 1024;
+
+    // The log is compacted when it holds more than twice the live states, plus this number of records
+    private static final long COMPACTION_MIN_RECORDS = 10000;
+
+    @Value("${batch.indexer.state.enabled}")
+    private boolean enabled;
+
+    @Value("${batch.indexer.state.path}")
+    private String path;
+
+    @Value("${batch.indexer.coordination.enabled}")
+    private boolean coordinated;
+
+    @Autowired
+    private Indexer indexer;
+
+    private final Map<String, NodeState> states = new ConcurrentHashMap<>();
+    private volatile boolean complete = false;
+
+    // Guards the log and the pending records
+    private final Object lock = new Object();
+    private FileChannel log;
+    private long logRecords = 0;
+    private List<byte[]> pending = new ArrayList<>();
+
+    /**
+     * Records not written to the log yet, taken by {@link #prepareCommit()}.
+     *
+     * @param records the encoded records
+     */
+    public record Commit(List<byte[]> records) {
+    }
+
+    /**
+     * Loads the log, truncating any torn tail, and compacts it when required.
+     *
+     * @throws IOException if the log cannot be read or written
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path logPath = Path.of(path);
+        if (logPath.getParent() != null) {
+            Files.createDirectories(logPath.getParent());
+        }
+        long validLength = load(logPath);
+        synchronized (lock) {
+            log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (log.size() > validLength) {
+                LOG.warn("Truncating {} bytes of invalid records at the end of {}", log.size() - validLength, logPath);
+                log.truncate(validLength);
+                log.force(true);
+            }
+            log.position(validLength);
+            compactIfNeeded();
+        }
+        LOG.info("Node state store loaded from {} with {} nodes ({})", logPath, states.size(), complete ? "complete" : "partial");
+    }
+
+    /**
+     * Closes the log.
+     *
+     * @throws IOException if an error occurs while closing the log
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the store is enabled.
+     *
+     * @return true if the store is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks whether the store holds every indexed node, so a missing node is known not to be indexed.
+     *
+     * @return true if the store is complete
+     */
+    public boolean isComplete() {
+        return enabled && complete && !coordinated;
+    }
+
+    /**
+     * Gets the number of nodes in the store.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * Gets the indexed state of a node.
+     *
+     * @param uuid the UUID of the node
+     * @return the state of the node, or null if the node is not in the store
+     */
+    public NodeState get(String uuid) {
+        return enabled ? states.get(uuid) : null;
+    }
+
+    /**
+     * Records the indexed state of a node.
+     *
+     * @param uuid the UUID of the node
+     * @param state the indexed state of the node
+     */
+    public void put(String uuid, NodeState state) {
+        if (enabled) {
+            synchronized (lock) {
+                states.put(uuid, state);
+                pending.add(encode(PUT, uuid, state));
+            }
+        }
+    }
+
+    /**
+     * Removes a node that is no longer indexed.
+     *
+     * @param uuid the UUID of the node
+     */
+    public void remove(String uuid) {
+        if (enabled) {
+            synchronized (lock) {
+                states.remove(uuid);
+                pending.add(encode(REMOVE, uuid, null));
+            }
+        }
+    }
+
+    /**
+     * Removes the nodes matching a filter, used when this instance takes over nodes that may have been indexed by
+     * another instance.
+     *
+     * @param filter the filter of the UUIDs of the nodes to remove
+     * @return the number of removed nodes
+     */
+    public int removeIf(Predicate<String> filter) {
+        if (!enabled) {
+            return 0;
+        }
+        int removed = 0;
+        synchronized (lock) {
+            for (String uuid : new ArrayList<>(states.keySet())) {
+                if (filter.test(uuid)) {
+                    states.remove(uuid);
+                    pending.add(encode(REMOVE, uuid, null));
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Takes the changes recorded so far, to be written to the log once the matching operations have reached
+     * OpenSearch.
+     *
+     * @return the changes to commit
+     */
+    public Commit prepareCommit() {
+        synchronized (lock) {
+            Commit commit = new Commit(pending);
+            pending = new ArrayList<>();
+            return commit;
+        }
+    }
+
+    /**
+     * Writes changes to the log and forces them to disk.
+     *
+     * @param commit the changes taken by {@link #prepareCommit()}
+     * @throws IOException if an error occurs while writing the log
+     */
+    public void commit(Commit commit) throws IOException {
+        if (!enabled || commit.records().isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            for (byte[] record : commit.records()) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    log.write(buffer);
+                }
+            }
+            log.force(false);
+            logRecords += commit.records().size();
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Empties the store and marks it as complete, used when the index is created.
+     *
+     * @throws IOException if an error occurs while writing the log
+     */
+    public void reset() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            states.clear();
+            pending.clear();
+            complete = true;
+            writeSnapshot();
+        }
+        LOG.info("Node state store has been reset for a new index");
+    }
+
+    /**
+     * Rebuilds the store from the first segment of every document of the index, and marks it as complete.
+     * Must not run while the indexer is processing transactions.
+     *
+     * @throws IOException if an error occurs while reading the index or writing the log
+     */
+    public void rebuild() throws IOException {
+        if (!enabled) {
+            LOG.warn("Node state store is disabled, ignoring rebuild");
+            return;
+        }
+        LOG.info("Rebuilding node state store from index...");
+        synchronized (lock) {
+            states.clear();
+            pending.clear();
+            indexer.scanSegmentStates((uuid, state) ->
+                    states.put(uuid, new NodeState(state.contentId(), state.segmentCount(), 0)));
+            complete = true;
+            writeSnapshot();
+        }
+        LOG.info("Node state store rebuilt with {} nodes", states.size());
+    }
+
+    /**
+     * Replays the log into memory, stopping at the first torn or corrupted record.
+     *
+     * @param logPath the path of the log
+     * @return the length of the valid part of the log
+     * @throws IOException if the log cannot be read
+     */
+    private long load(Path logPath) throws IOException {
+        if (!Files.exists(logPath)) {
+            return 0;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_PAYLOAD_SIZE) {
+                    break;
+                }
+                int checksum;
+                byte[] payload = new byte[length];
+                try {
+                    checksum = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                apply(payload);
+                validLength += RECORD_HEADER_SIZE + length;
+                logRecords++;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Applies a record read from the log to the in-memory states.
+     *
+     * @param payload the payload of the record
+     * @throws IOException if the payload cannot be decoded
+     */
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (in.readByte()) {
+            case PUT -> {
+                String uuid = in.readUTF();
+                states.put(uuid, new NodeState(in.readUTF(), in.readInt(), in.readLong()));
+            }
+            case REMOVE -> states.remove(in.readUTF());
+            case COMPLETE -> complete = true;
+            default -> throw new IOException("Unknown record type in node state log");
+        }
+    }
+
+    /**
+     * Compacts the log when most of its records have been superseded, as long as no change is waiting to be
+     * committed, so the snapshot only holds committed states. Must be called holding the lock.
+     *
+     * @throws IOException if an error occurs while writing the log
+     */
+    private void compactIfNeeded() throws IOException {
+        if (pending.isEmpty() && logRecords > 2L * states.size() + COMPACTION_MIN_RECORDS) {
+            long superseded = logRecords - states.size();
+            writeSnapshot();
+            LOG.info("Node state log compacted, {} superseded records removed", superseded);
+        }
+    }
+
+    /**
+     * Replaces the log with a snapshot of the in-memory states, written to a temporary file and moved over the log.
+     * Must be called holding the lock.
+     *
+     * @throws IOException if an error occurs while writing the log
+     */
+    private void writeSnapshot() throws IOException {
+        Path logPath = Path.of(path);
+        Path snapshotPath = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        long records = 0;
+        try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            if (complete) {
+                buffer = append(snapshot, buffer, encode(COMPLETE, null, null));
+                records++;
+            }
+            for (Map.Entry<String, NodeState> entry : states.entrySet()) {
+                buffer = append(snapshot, buffer, encode(PUT, entry.getKey(), entry.getValue()));
+                records++;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                snapshot.write(buffer);
+            }
+            snapshot.force(true);
+        }
+        if (log != null) {
+            log.close();
+        }
+        Files.move(snapshotPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.position(log.size());
+        logRecords = records;
+    }
+
+    /**
+     * Appends a record to a write buffer, writing the buffer to the channel when it is full.
+     *
+     * @param channel the channel the buffer is written to
+     * @param buffer the write buffer
+     * @param record the encoded record
+     * @return the write buffer
+     * @throws IOException if an error occurs while writing the buffer
+     */
+    private static ByteBuffer append(FileChannel channel, ByteBuffer buffer, byte[] record) throws IOException {
+        if (buffer.remaining() < record.length) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        if (buffer.remaining() < record.length) {
+            channel.write(ByteBuffer.wrap(record));
+        } else {
+            buffer.put(record);
+        }
+        return buffer;
+    }
+
+    /**
+     * Encodes a record: payload length, CRC32 of the payload and payload.
+     *
+     * @param type the type of the record
+     * @param uuid the UUID of the node, null for records not related to a node
+     * @param state the state of the node, only for {@code PUT} records
+     * @return the encoded record
+     */
+    private static byte[] encode(byte type, String uuid, NodeState state) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type);
+            if (uuid != null) {
+                out.writeUTF(uuid);
+            }
+            if (state != null) {
+                out.writeUTF(state.contentId());
+                out.writeInt(state.segmentCount());
+                out.writeLong(state.lastTxnId());
+            }
+            byte[] record = bytes.toByteArray();
+            int length = record.length - RECORD_HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(record, RECORD_HEADER_SIZE, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            // Writing to memory never fails
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the checksum of a payload.
+     *
+     * @param payload the payload
+     * @return the CRC32 of the payload
+     */
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+}
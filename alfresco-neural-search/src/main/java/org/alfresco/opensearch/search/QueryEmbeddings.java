@@ -0,0 +1,160 @@
+package org.alfresco.opensearch.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
+import org.alfresco.opensearch.client.OpenSearchClientFactory;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the embeddings of search queries with the predict API of the ML plugin, keeping the most recently used
+ * ones in a bounded in-memory cache, so a repeated query is searched with a plain {@code knn} query without running
+ * the model again.
+ * <p>
+ * Queries are cached by their normalized text, with Unicode normalization and collapsed whitespace, and by the ID
+ * of the model, so a new model never reuses the embeddings of the previous one. The cache holds at most
+ * {@code opensearch.search.embeddingCache.size} embeddings and evicts the least recently used one when it is full.
+ */
+@Component
+public class QueryEmbeddings {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${opensearch.search.embeddingCache.size}")
+    private int cacheSize;
+
+    @Autowired
+    private OpenSearchClientFactory openSearchClientFactory;
+
+    // Embeddings by model ID and normalized query, in access order, guarded by this
+    private final Map<String, float[]> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Retrieves an instance of RestClient from the factory.
+     *
+     * @return RestClient instance
+     */
+    private RestClient restClient() {
+        return openSearchClientFactory.getRestClient();
+    }
+
+    /**
+     * Gets the embedding of a query, from the cache or computed by the model.
+     *
+     * @param query the search query
+     * @param modelId the ID of the model computing the embedding
+     * @return the embedding of the query
+     * @throws IOException if an I/O error occurs while running the model
+     */
+    public float[] embed(String query, String modelId) throws IOException {
+        String text = normalize(query);
+        String key = modelId + "\u0000" + text;
+        synchronized (this) {
+            float[] embedding = cache.get(key);
+            if (embedding != null) {
+                hits.incrementAndGet();
+                return embedding;
+            }
+        }
+        misses.incrementAndGet();
+        float[] embedding = predict(text, modelId);
+        if (cacheSize > 0) {
+            synchronized (this) {
+                cache.put(key, embedding);
+            }
+        }
+        return embedding;
+    }
+
+    /**
+     * Gets the number of queries whose embedding was found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of queries whose embedding was computed by the model.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of embeddings in the cache.
+     *
+     * @return the size of the cache
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Computes the embedding of a text with the text embedding predict API of the ML plugin.
+     *
+     * @param text the text
+     * @param modelId the ID of the model
+     * @return the embedding of the text
+     * @throws IOException if an I/O error occurs while running the model or the response has no embedding
+     */
+    private float[] predict(String text, String modelId) throws IOException {
+        Request request = new Request("POST", "/_plugins/_ml/_predict/text_embedding/" + modelId);
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("text_docs");
+            generator.writeString(text);
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("target_response");
+            generator.writeString("sentence_embedding");
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }));
+        Response response = restClient().performRequest(request);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode data = objectMapper.readTree(response.getEntity().getContent())
+                .path("inference_results").path(0).path("output").path(0).path("data");
+        if (data.isEmpty()) {
+            throw new IOException("Model " + modelId + " returned no embedding");
+        }
+        float[] embedding = new float[data.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = (float) data.get(i).asDouble();
+        }
+        return embedding;
+    }
+
+    /**
+     * Normalizes a query, so queries differing only by Unicode representation or whitespace share an embedding.
+     *
+     * @param query the search query
+     * @return the normalized query
+     */
+    private static String normalize(String query) {
+        return WHITESPACE.matcher(Normalizer.normalize(query, Normalizer.Form.NFC)).replaceAll(" ").trim();
+    }
+
+}
@@ -1,35 +1,54 @@
 package org.alfresco.opensearch.search;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.client.JsonBody;
 import org.alfresco.opensearch.client.OpenSearchClientFactory;
 import org.alfresco.opensearch.index.OpenSearchConfiguration;
-import org.alfresco.utils.JsonUtils;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.opensearch.client.Request;
 import org.opensearch.client.Response;
 import org.opensearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 /**
  * Component for executing searches in OpenSearch.
+ * <p>
+ * Keyword and neural searches are sorted by score, with the UUID and ordinal of the segments as tie breakers, so
+ * their results can be paged with a {@link Cursor}. Next pages are searched with {@code search_after} on a
+ * point-in-time reader of the index, so every page is read from the same snapshot of the index, which is kept alive
+ * for {@code opensearch.search.pit.keepAlive} after every page.
+ * <p>
+ * Search responses are not parsed into a tree: they are handed to a {@link ResponseReader} as a stream of JSON
+ * tokens, and only the fields of the segments returned by the API are requested from OpenSearch.
  */
 @Component
 public class Search {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Search.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Fields of the segments returned by the searches
+    private static final List<String> SOURCE_FIELDS = List.of("id", "uuid", "name", "text");
+
     @Value("${opensearch.index.name}")
     private String indexName;
 
     @Value("${opensearch.ingest.pipeline.name}")
     private String pipelineName;
 
-    @Value("${opensearch.results.count}")
-    private int resultsCount;
+    @Value("${opensearch.search.pit.keepAlive}")
+    private String keepAlive;
 
     @Autowired
     private OpenSearchConfiguration openSearchConfiguration;
@@ -37,6 +56,42 @@ public class Search {
     @Autowired
     private OpenSearchClientFactory openSearchClientFactory;
 
+    @Autowired
+    private QueryEmbeddings queryEmbeddings;
+
+    /**
+     * Position of a page of results: the point-in-time reader the previous pages were read from and the sort values
+     * of the last segment of the previous page.
+     *
+     * @param pitId the ID of the point-in-time reader, or null if the previous page was not read from one
+     * @param score the score of the last segment
+     * @param uuid the UUID of the document of the last segment
+     * @param ordinal the ordinal of the last segment
+     * @param offset the number of segments returned by the previous pages
+     */
+    public record Cursor(String pitId, double score, String uuid, int ordinal, int offset) {
+
+        /**
+         * Gets the same position on another point-in-time reader.
+         *
+         * @param pitId the ID of the point-in-time reader
+         * @return the cursor on the point-in-time reader
+         */
+        public Cursor withPitId(String pitId) {
+            return new Cursor(pitId, score, uuid, ordinal, offset);
+        }
+    }
+
+    /**
+     * Reads a search response from the stream of its JSON tokens.
+     *
+     * @param <T> the type of the result read from the response
+     */
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
     /**
      * Retrieves an instance of RestClient from the factory.
      *
@@ -47,131 +102,233 @@ public class Search {
     }
 
     /**
-     * Executes a keyword search query in OpenSearch.
+     * Executes a keyword search query in OpenSearch, retrieving the page following a cursor.
      *
+     * @param <T> the type of the result read from the response
      * @param query the search query
-     * @return the search result as a JsonNode
+     * @param size the number of segments to retrieve
+     * @param cursor the position of the page on a point-in-time reader, or null for the first page
+     * @param reader the reader of the response
+     * @return the result read from the response
      * @throws IOException if an I/O error occurs during the request
      */
-    public JsonNode keywordSearch(String query) throws IOException {
-        Request request = new Request("GET", "/" + indexName + "/_search");
-        String jsonSearchPayload = """
-            {
-              "_source": {
-                "excludes": [
-                  "passage_embedding"
-                ]
-              },
-              "query": {
-                "match": {
-                  "text": {
-                    "query": "%s"
-                  }
-                }
-              }
-            }
-            """;
-
-        String escapedQuery = JsonUtils.escape(query);
-        request.setEntity(new StringEntity(String.format(jsonSearchPayload, escapedQuery), ContentType.APPLICATION_JSON));
-        return search(request);
+    public <T> T keywordSearch(String query, int size, Cursor cursor, ResponseReader<T> reader) throws IOException {
+        Request request = new Request("GET", cursor == null ? "/" + indexName + "/_search" : "/_search");
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("size", size);
+            writeSourceIncludes(generator);
+            writePage(generator, cursor);
+            generator.writeFieldName("query");
+            writeMatchQuery(generator, query);
+            generator.writeEndObject();
+        }));
+        return search(request, reader);
     }
 
     /**
-     * Executes a neural search query in OpenSearch.
+     * Executes a neural search query in OpenSearch, as a knn query with the embedding of the query, retrieving the
+     * page following a cursor. The nearest segments are only retrieved up to the end of the page, since the segments
+     * of the previous pages are skipped, so every page runs the knn query again with {@code k} growing by the page
+     * size, up to {@code opensearch.search.maxResults}.
      *
+     * @param <T> the type of the result read from the response
      * @param query the search query
-     * @return the search result as a JsonNode
+     * @param size the number of segments to retrieve
+     * @param cursor the position of the page on a point-in-time reader, or null for the first page
+     * @param reader the reader of the response
+     * @return the result read from the response
      * @throws IOException if an I/O error occurs during the request
      */
-    public JsonNode neuralSearch(String query) throws IOException {
-        Request request = new Request("GET", "/" + indexName + "/_search");
-        String jsonSearchPayload = """
-             {
-               "_source": {
-                 "excludes": [
-                   "passage_embedding"
-                 ]
-               },
-               "query": {
-                 "neural": {
-                   "passage_embedding": {
-                     "query_text": "%s",
-                     "model_id": "%s",
-                     "k": %s
-                   }
-                 }
-               }
-             }
-             """;
-
-        String escapedQuery = JsonUtils.escape(query);
-        String modelId = openSearchConfiguration.getModelId();
-        request.setEntity(new StringEntity(String.format(jsonSearchPayload, escapedQuery, modelId, resultsCount), ContentType.APPLICATION_JSON));
-        return search(request);
+    public <T> T neuralSearch(String query, int size, Cursor cursor, ResponseReader<T> reader) throws IOException {
+        Request request = new Request("GET", cursor == null ? "/" + indexName + "/_search" : "/_search");
+        float[] embedding = queryEmbeddings.embed(query, openSearchConfiguration.getModelId());
+        int k = cursor == null ? size : cursor.offset() + size;
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("size", size);
+            writeSourceIncludes(generator);
+            writePage(generator, cursor);
+            generator.writeFieldName("query");
+            writeKnnQuery(generator, embedding, k);
+            generator.writeEndObject();
+        }));
+        return search(request, reader);
     }
 
     /**
      * Executes a hybrid search (keyword + neural) query in OpenSearch.
      *
+     * @param <T> the type of the result read from the response
      * @param query the search query
-     * @return the search result as a JsonNode
+     * @param size the number of segments to retrieve
+     * @param reader the reader of the response
+     * @return the result read from the response
      * @throws IOException if an I/O error occurs during the request
      */
-    public JsonNode hybridSearch(String query) throws IOException {
+    public <T> T hybridSearch(String query, int size, ResponseReader<T> reader) throws IOException {
         Request request = new Request("GET", "/" + indexName + "/_search?search_pipeline=" + pipelineName);
-        String jsonSearchPayload = """
-            {
-              "_source": {
-                "exclude": [
-                  "passage_embedding"
-                ]
-              },
-              "query": {
-                "hybrid": {
-                  "queries": [
-                    {
-                      "match": {
-                        "text": {
-                          "query": "%s"
-                        }
-                      }
-                    },
-                    {
-                      "neural": {
-                        "passage_embedding": {
-                          "query_text": "%s",
-                          "model_id": "%s",
-                          "k": %s
-                        }
-                      }
-                    }
-                  ]
-                }
-              }
-            }
-            """;
-
-        String escapedQuery = JsonUtils.escape(query);
-        String modelId = openSearchConfiguration.getModelId();
-        request.setEntity(new StringEntity(String.format(jsonSearchPayload, escapedQuery, escapedQuery, modelId, resultsCount), ContentType.APPLICATION_JSON));
-        return search(request);
+        float[] embedding = queryEmbeddings.embed(query, openSearchConfiguration.getModelId());
+        request.setEntity(JsonBody.entity(generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("size", size);
+            writeSourceIncludes(generator);
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("hybrid");
+            generator.writeArrayFieldStart("queries");
+            writeMatchQuery(generator, query);
+            writeKnnQuery(generator, embedding, size);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }));
+        return search(request, reader);
+    }
+
+    /**
+     * Opens a point-in-time reader on the current snapshot of the index.
+     *
+     * @return the ID of the point-in-time reader
+     * @throws IOException if an I/O error occurs during the request
+     */
+    public String openPit() throws IOException {
+        Request request = new Request("POST", "/" + indexName + "/_search/point_in_time");
+        request.addParameter("keep_alive", keepAlive);
+        Response response = restClient().performRequest(request);
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.readTree(response.getEntity().getContent()).path("pit_id").asText();
+    }
+
+    /**
+     * Closes a point-in-time reader, once its last page has been read. A reader that has already expired is
+     * ignored.
+     *
+     * @param pitId the ID of the point-in-time reader
+     */
+    public void closePit(String pitId) {
+        try {
+            Request request = new Request("DELETE", "/_search/point_in_time");
+            request.setEntity(JsonBody.entity(generator -> {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("pit_id");
+                generator.writeString(pitId);
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }));
+            restClient().performRequest(request);
+        } catch (IOException e) {
+            LOG.debug("Point-in-time reader has not been closed due to the Exception: {}", e.getMessage());
+        }
     }
 
     /**
-     * Executes a search request using the provided {@link Request} object and parses the response into a {@link JsonNode}.
+     * Writes the sort of the results, by score with the UUID and ordinal of the segments as tie breakers, and the
+     * point-in-time reader and {@code search_after} values of the page following a cursor.
      *
-     * <p>This method uses an HTTP client to perform the search request, then converts the response content into a JSON
-     * representation using the Jackson library.</p>
+     * @param generator the generator of the request body
+     * @param cursor the position of the page, or null for the first page
+     * @throws IOException if an error occurs while writing the body
+     */
+    private void writePage(JsonGenerator generator, Cursor cursor) throws IOException {
+        generator.writeArrayFieldStart("sort");
+        generator.writeStartObject();
+        generator.writeStringField("_score", "desc");
+        generator.writeEndObject();
+        generator.writeStartObject();
+        generator.writeStringField("uuid", "asc");
+        generator.writeEndObject();
+        generator.writeStartObject();
+        generator.writeStringField("ordinal", "asc");
+        generator.writeEndObject();
+        generator.writeEndArray();
+        if (cursor != null) {
+            generator.writeObjectFieldStart("pit");
+            generator.writeStringField("id", cursor.pitId());
+            generator.writeStringField("keep_alive", keepAlive);
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("search_after");
+            generator.writeNumber(cursor.score());
+            generator.writeString(cursor.uuid());
+            generator.writeNumber(cursor.ordinal());
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes the source filter including only the fields of the segments returned by the searches, so neither the
+     * embeddings nor the other fields of the segments are read and sent by OpenSearch.
+     *
+     * @param generator the generator of the request body
+     * @throws IOException if an error occurs while writing the body
+     */
+    private static void writeSourceIncludes(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart("_source");
+        generator.writeArrayFieldStart("includes");
+        for (String field : SOURCE_FIELDS) {
+            generator.writeString(field);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a match query on the text of the segments.
      *
+     * @param generator the generator of the request body
+     * @param query the search query
+     * @throws IOException if an error occurs while writing the body
+     */
+    private static void writeMatchQuery(JsonGenerator generator, String query) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("match");
+        generator.writeObjectFieldStart("text");
+        generator.writeStringField("query", query);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a knn query on the embeddings of the segments with the embedding of the query, so the model does not
+     * run again for the query.
+     *
+     * @param generator the generator of the request body
+     * @param embedding the embedding of the query, see {@link QueryEmbeddings}
+     * @param k the number of nearest segments to retrieve
+     * @throws IOException if an error occurs while writing the body
+     */
+    private static void writeKnnQuery(JsonGenerator generator, float[] embedding, int k) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("knn");
+        generator.writeObjectFieldStart("passage_embedding");
+        generator.writeArrayFieldStart("vector");
+        for (float value : embedding) {
+            generator.writeNumber(value);
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("k", k);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Executes a search request and reads the response as a stream of JSON tokens, without building a tree of the
+     * response.
+     *
+     * @param <T> the type of the result read from the response
      * @param request the search {@link Request} to be executed
-     * @return a {@link JsonNode} representing the JSON response from the search request
-     * @throws IOException if an I/O error occurs during the execution of the request or parsing the response
+     * @param reader the reader of the response
+     * @return the result read from the response
+     * @throws IOException if an I/O error occurs during the execution of the request or reading the response
      */
-    private JsonNode search(Request request) throws IOException {
+    private <T> T search(Request request, ResponseReader<T> reader) throws IOException {
         Response response = restClient().performRequest(request);
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.readTree(response.getEntity().getContent());
+        try (InputStream content = response.getEntity().getContent();
+             JsonParser parser = JSON_FACTORY.createParser(content)) {
+            return reader.read(parser);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -2,15 +2,18 @@ package org.alfresco.repo.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.alfresco.opensearch.client.AlfrescoSolrApiClientFactory;
 import org.alfresco.opensearch.index.Index;
 import org.alfresco.opensearch.index.OpenSearchConfiguration;
 import org.alfresco.opensearch.ingest.Indexer;
-import org.alfresco.repo.service.beans.Node;
-import org.alfresco.repo.service.beans.NodeContainer;
-import org.alfresco.repo.service.beans.TransactionNodeContainer;
+import org.alfresco.opensearch.ingest.state.NodeStateStore;
+import org.alfresco.repo.service.beans.Transaction;
 import org.alfresco.repo.service.beans.TransactionNode;
-import org.alfresco.utils.JsonUtils;
+import org.alfresco.repo.service.beans.TransactionNodeContainer;
+import org.alfresco.repo.service.pipeline.IngestionPipeline;
+import org.alfresco.repo.service.pipeline.IngestionWindow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,35 +21,52 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.IntStream;
-
-import static org.alfresco.utils.JsonUtils.replaceUnicode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service for batch indexing documents into OpenSearch.
+ * <p>
+ * Pending transactions are split into ranges sized by the {@link WindowSizer}. The node events of up to
+ * {@code batch.indexer.pipeline.transactions.concurrency} ranges are retrieved from the repository in parallel,
+ * and every range is handed over to the {@link IngestionPipeline} as a window, in transaction order, so the next
+ * ranges are fetched while the previous ones are still being processed. The pipeline routes the events of a node
+ * to the same worker of every stage, so they are applied in transaction order even though ranges overlap in the
+ * pipeline. The indexed transaction checkpoint only advances past the leading windows that have been completely
+ * processed.
+ * <p>
+ * When several instances share the index, every instance only processes the nodes of the partitions it has leased
+ * from the {@link PartitionLeases}, and the checkpoint of these partitions is stored with their leases.
+ * <p>
+ * Every indexing run processes up to {@code batch.indexer.pipeline.maxWindows} windows. While the checkpoint lags
+ * behind the repository by more than {@code batch.indexer.catchUp.lagThreshold} transactions, runs are chained
+ * back to back instead of waiting for the next cron tick, until the backlog is drained.
  */
 @Service
 public class BatchIndexerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(BatchIndexerService.class);
 
-    // Alfresco Content Model
-    public static final String CM_NAME = "{http://www.alfresco.org/model/content/1.0}name";
-    public static final String SYS_STORE_IDENTIFIER = "{http://www.alfresco.org/model/system/1.0}store-identifier";
-    public static final String CONTENT = "{http://www.alfresco.org/model/content/1.0}content";
-    public static final String SPACES_STORE = "SpacesStore";
+    @Value("${batch.indexer.pipeline.maxWindows}")
+    private int maxWindows;
 
-    // Max number of tokens handled by the NLP token
-    private static final int MAX_TOKENS = 512;
+    @Value("${batch.indexer.pipeline.transactions.concurrency}")
+    private int rangeConcurrency;
 
-    @Value("${batch.indexer.transaction.maxResults}")
-    private int maxResults;
+    @Value("${batch.indexer.catchUp.enabled}")
+    private boolean catchUpEnabled;
 
-    @Value("${batch.indexer.indexableTypes}")
-    private String indexableTypes;
+    @Value("${batch.indexer.catchUp.lagThreshold}")
+    private long catchUpLagThreshold;
 
     @Autowired
     private Indexer indexer;
@@ -54,237 +74,343 @@ public class BatchIndexerService {
     @Autowired
     private Index index;
 
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+
+    @Autowired
+    private NodeStateStore nodeStateStore;
+
+    @Autowired
+    private IndexingProgress progress;
+
+    @Autowired
+    private WindowSizer windowSizer;
+
+    @Autowired
+    private PartitionLeases partitionLeases;
+
     @Autowired
     private AlfrescoSolrApiClientFactory alfrescoSolrApiClient;
 
     @Autowired
     private OpenSearchConfiguration openSearchConfiguration;
 
+    // Completion time of the last window the checkpoint advanced past
+    private long lastCompletedAt;
+
+    // Whether the indexing process is running, and whether it has been requested again while running
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean rerunRequested = new AtomicBoolean();
+
+    private ExecutorService rangeExecutor;
+
+    /**
+     * Creates the pool retrieving the node events of transaction ranges.
+     */
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        rangeExecutor = Executors.newFixedThreadPool(rangeConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "indexer-range-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Shuts the range pool down.
+     */
+    @PreDestroy
+    public void close() {
+        rangeExecutor.shutdownNow();
+    }
+
     /**
      * Schedules the indexing process according to the cron expression specified in properties.
+     * Also requested by the {@link RepositoryEventListener} when repository events are received. Only one indexing
+     * process runs at a time: a request received while it is running makes it run once more when it ends.
      */
     @Scheduled(cron = "${batch.indexer.cron}")
     public void index() {
+        rerunRequested.set(true);
+        while (rerunRequested.get() && running.compareAndSet(false, true)) {
+            try {
+                rerunRequested.set(false);
+                runIndexing();
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    /**
+     * Runs the indexing process, chaining indexing runs while catching up with a backlog of transactions.
+     */
+    private void runIndexing() {
         try {
             if (openSearchConfiguration.getLatch().getCount() > 0) {
                 LOG.info("INDEXER: Waiting for OpenSearch to be configured...");
             }
             openSearchConfiguration.getLatch().await();
-            internalIndex();
+            boolean catchingUp;
+            do {
+                boolean advanced = internalIndex();
+                catchingUp = catchUpEnabled && advanced && progress.getLag() > catchUpLagThreshold
+                        && !Thread.currentThread().isInterrupted();
+                if (catchingUp && !progress.isCatchingUp()) {
+                    LOG.info("Catching up with a backlog of {} transactions", progress.getLag());
+                } else if (catchingUp) {
+                    LOG.info("Catching up: {} transactions behind, about {} seconds left",
+                            progress.getLag(), progress.getEstimatedSecondsToCatchUp());
+                } else if (progress.isCatchingUp()) {
+                    LOG.info("Caught up with the repository, back to the cron schedule");
+                }
+                progress.setCatchingUp(catchingUp);
+            } while (catchingUp);
         } catch (Exception e) {
+            progress.setCatchingUp(false);
             LOG.error("Error during indexing", e);
         }
     }
 
     /**
-     * Performs the internal indexing process. Retrieves transactions and processes them.
+     * Performs the internal indexing process. Splits the pending transactions into up to
+     * {@code batch.indexer.pipeline.maxWindows} ranges, retrieves the node events of several ranges in parallel,
+     * submits the ranges to the ingestion pipeline in transaction order and advances the checkpoint as they complete.
+     * When a window fails, the windows after it are cancelled and drained before the run ends.
      *
+     * @return true if the checkpoint has advanced
      * @throws Exception if an error occurs during indexing
      */
-    private void internalIndex() throws Exception {
-        long lastTransactionId = index.getAlfrescoIndexField() + 1;
-
-        JsonNode rootNode = retrieveTransactions(lastTransactionId, maxResults);
+    private boolean internalIndex() throws Exception {
+        long startTime = System.currentTimeMillis();
+        if (partitionLeases.isEnabled()) {
+            partitionLeases.renew();
+            if (partitionLeases.getHeldPartitions().isEmpty()) {
+                LOG.debug("No partition leased by instance {}", partitionLeases.getInstanceId());
+                return false;
+            }
+        }
+        long startTxnId = partitionLeases.isEnabled() ? partitionLeases.getCheckpoint() : index.getAlfrescoIndexField();
+        long fromTxnId = startTxnId + 1;
+        progress.startRun(startTxnId);
+        Deque<Range> ranges = new ArrayDeque<>();
+        Deque<IngestionWindow> windows = new ArrayDeque<>();
+        int rangeCount = 0;
 
-        long minTxnId = lastTransactionId;
-        long maxTxnId = lastTransactionId;
+        try {
+            while (rangeCount < maxWindows) {
+                JsonNode rootNode = retrieveTransactions(fromTxnId,
+                        windowSizer.getTransactionCount() * rangeConcurrency);
+
+                long maxTxnIdRepository = rootNode.get("maxTxnId").asLong();
+                progress.setRepositoryMaxTxnId(maxTxnIdRepository);
+                List<Transaction> transactions = readTransactions(rootNode.get("transactions"));
+                if (transactions.isEmpty()) {
+                    if (rangeCount == 0) {
+                        LOG.info(
+                                """
+                                All transactions have been indexed:
+                                 - maximum Transaction Id in Alfresco is {}
+                                 - maximum Transaction Id in OpenSearch is {}
+                                """, maxTxnIdRepository, startTxnId);
+                    }
+                    break;
+                }
 
-        JsonNode transactionsNode = rootNode.get("transactions");
-        long maxTxnIdRepository = rootNode.get("maxTxnId").asLong();
-        if (transactionsNode != null && transactionsNode.isArray() && !transactionsNode.isEmpty()) {
-            for (JsonNode transactionNode : transactionsNode) {
-                long id = transactionNode.get("id").asLong();
-                minTxnId = Math.min(minTxnId, id);
-                maxTxnId = Math.max(maxTxnId, id);
+                while (!transactions.isEmpty() && rangeCount < maxWindows) {
+                    int count = windowSizer.fit(transactions);
+                    Range range = retrieveRange(fromTxnId, transactions.subList(0, count));
+                    ranges.add(range);
+                    rangeCount++;
+                    fromTxnId = range.maxTxnId() + 1;
+                    transactions = transactions.subList(count, transactions.size());
+
+                    if (ranges.size() >= rangeConcurrency) {
+                        submit(ranges.poll(), windows);
+                        advanceCheckpoint(windows, false);
+                    }
+                }
+            }
+            while (!ranges.isEmpty()) {
+                submit(ranges.poll(), windows);
+                advanceCheckpoint(windows, false);
+            }
+        } finally {
+            ranges.forEach(range -> range.nodes().cancel(true));
+            try {
+                advanceCheckpoint(windows, true);
+            } finally {
+                drain(windows);
+                progress.recordRun(progress.getIndexedTxnId() - startTxnId, System.currentTimeMillis() - startTime);
             }
-
-            LOG.info("Indexing content for transactions between {} and {}", minTxnId, maxTxnId);
-            processTransactions(minTxnId, maxTxnId);
-
-            index.updateAlfrescoIndex(maxTxnId);
-        } else {
-            LOG.info(
-                    """
-                    All transactions have been indexed:
-                     - maximum Transaction Id in Alfresco is {}
-                     - maximum Transaction Id in OpenSearch is {}
-                    """, maxTxnIdRepository, index.getAlfrescoIndexField());
         }
+        return progress.getIndexedTxnId() > startTxnId;
     }
 
     /**
-     * Retrieves transactions from the Solr API.
+     * Starts retrieving the node events of a range of transactions on the range pool.
      *
-     * @param lastTransactionId the last transaction ID that was indexed
-     * @param maxResults the maximum number of results to retrieve
-     * @return a JSON node representing the transactions
-     * @throws Exception if an error occurs during the API request
+     * @param fromTxnId the first transaction ID not covered by previous ranges
+     * @param transactions the transactions of the range, in transaction order
+     * @return the range, holding the future node events
      */
-    private JsonNode retrieveTransactions(long lastTransactionId, int maxResults) throws Exception {
-        String endpoint = String.format("transactions?minTxnId=%d&maxResults=%d", lastTransactionId, maxResults);
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.readTree(alfrescoSolrApiClient.executeGetRequest(endpoint));
+    private Range retrieveRange(long fromTxnId, List<Transaction> transactions) {
+        long minTxnId = fromTxnId;
+        long maxTxnId = fromTxnId;
+        for (Transaction transaction : transactions) {
+            minTxnId = Math.min(minTxnId, transaction.getId());
+            maxTxnId = Math.max(maxTxnId, transaction.getId());
+        }
+        long rangeMinTxnId = minTxnId;
+        long rangeMaxTxnId = maxTxnId;
+        CompletableFuture<List<TransactionNode>> nodes = CompletableFuture.supplyAsync(() -> {
+            try {
+                return retrieveNodes(rangeMinTxnId, rangeMaxTxnId);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, rangeExecutor);
+        return new Range(minTxnId, maxTxnId, transactions.size(), nodes);
     }
 
     /**
-     * Processes transactions between the specified minimum and maximum transaction IDs.
+     * Waits for the node events of a range and submits them to the ingestion pipeline as a new window.
+     * When several instances share the index, only the events of the leased partitions are submitted.
      *
-     * @param minTxnId the minimum transaction ID
-     * @param maxTxnId the maximum transaction ID
-     * @throws Exception if an error occurs during processing
+     * @param range the range to submit
+     * @param windows the submitted windows, in transaction order, the new window is added to
+     * @throws Exception if the node events could not be retrieved
      */
-    private void processTransactions(long minTxnId, long maxTxnId) throws Exception {
-        String payload = String.format("{\"fromTxnId\": %d, \"toTxnId\": %d}", minTxnId, maxTxnId);
-        String nodesResponse = alfrescoSolrApiClient.executePostRequest("nodes", payload);
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        TransactionNodeContainer transactionNodeContainer = objectMapper.readValue(nodesResponse, TransactionNodeContainer.class);
-        List<TransactionNode> transactionNodeList = transactionNodeContainer.getNodes();
-
-        for (TransactionNode transactionNode : transactionNodeList) {
-            processRawNode(transactionNode);
+    private void submit(Range range, Deque<IngestionWindow> windows) throws Exception {
+        List<TransactionNode> nodes;
+        try {
+            nodes = range.nodes().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
         }
+        windowSizer.recordTransactions(range.transactions(), nodes.size());
+        if (partitionLeases.isEnabled()) {
+            nodes = partitionLeases.select(nodes);
+        }
+        LOG.info("Indexing content for {} nodes in transactions between {} and {}",
+                nodes.size(), range.minTxnId(), range.maxTxnId());
+        IngestionWindow window = new IngestionWindow(range.minTxnId(), range.maxTxnId(), nodes.size());
+        windows.add(window);
+        ingestionPipeline.submit(window, nodes);
     }
 
     /**
-     * Processes an individual raw node.
+     * Advances the indexed transaction checkpoint past the leading windows that have completed.
+     * Pending bulk operations are flushed before the checkpoint is updated. Node state changes recorded before the
+     * flush are committed to the {@link NodeStateStore} once their operations have reached OpenSearch.
+     * The processing time of every completed window is reported to the {@link WindowSizer}.
      *
-     * @param transactionNode the raw node to process
-     * @throws Exception if an error occurs during processing
+     * @param windows the submitted windows, in transaction order
+     * @param wait true to wait for every window to complete, false to stop at the first incomplete window
+     * @throws Exception the cause of the failure of a window, which stops the checkpoint before that window and
+     *                   leaves the failed window and the ones after it in the deque
      */
-    private void processRawNode(TransactionNode transactionNode) throws Exception {
-        String payload = String.format("""
-                {
-                    "nodeIds": [%s],
-                    "includeAclId": false,
-                    "includeOwner": false,
-                    "includePaths": false,
-                    "includeParentAssociations": false,
-                    "includeChildIds": false,
-                    "includeChildAssociations": false
-                }
-                """, transactionNode.getId());
-        String metadataResponse = alfrescoSolrApiClient.executePostRequest("metadata", payload);
-
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        switch (transactionNode.getStatus()) {
-            // Created or Updated
-            case "u":
-                NodeContainer nodeContainer = objectMapper.readValue(metadataResponse, NodeContainer.class);
-                for (Node node : nodeContainer.getNodes()) {
-                    if (isIndexableType(node.getType())) {
-                        processNode(node);
-                    }
-                }
-                break;
-            // Deleted
-            case "d":
-                int index = transactionNode.getNodeRef().lastIndexOf("/");
-                if (index == -1) {
-                    throw new IllegalArgumentException("Invalid node reference: " + transactionNode.getNodeRef());
-                }
-                String uuid = transactionNode.getNodeRef().substring(index + 1);
-                LOG.debug("Deleting document with NodeRef {}", transactionNode.getNodeRef());
-                indexer.deleteDocument(uuid);
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown status: " + transactionNode.getStatus());
+    private void advanceCheckpoint(Deque<IngestionWindow> windows, boolean wait) throws Exception {
+        while (!windows.isEmpty() && (wait || windows.peek().isDone())) {
+            IngestionWindow window = windows.peek();
+            window.await();
+            windowSizer.recordWindow(window.getSize(),
+                    window.getCompletedAt() - Math.max(window.getCreatedAt(), lastCompletedAt));
+            lastCompletedAt = Math.max(lastCompletedAt, window.getCompletedAt());
+            NodeStateStore.Commit commit = nodeStateStore.prepareCommit();
+            indexer.flush();
+            nodeStateStore.commit(commit);
+            if (partitionLeases.isEnabled()) {
+                partitionLeases.advance(window.getMaxTxnId());
+            } else {
+                index.updateAlfrescoIndex(window.getMaxTxnId());
+            }
+            progress.setIndexedTxnId(window.getMaxTxnId());
+            windows.poll();
         }
     }
 
     /**
-     * Checks if the node type is indexable based on the configured indexable types.
+     * Cancels the windows left behind a failed window and waits for their nodes to leave the pipeline, so none
+     * of them is still being processed during the next run. The node state changes of the nodes processed before
+     * the cancellation match their queued bulk operations, they are committed with the next checkpoint.
      *
-     * @param type the node type
-     * @return true if the type is indexable, false otherwise
+     * @param windows the windows that have not completed, in transaction order
+     * @throws InterruptedException if interrupted while waiting for the windows to drain
      */
-    private boolean isIndexableType(String type) {
-        String[] types = indexableTypes.split(",");
-        for (String t : types) {
-            if (t.equals(type)) {
-                return true;
-            }
+    private void drain(Deque<IngestionWindow> windows) throws InterruptedException {
+        windows.forEach(IngestionWindow::cancel);
+        for (IngestionWindow window : windows) {
+            window.awaitDrained();
         }
-        return false;
+        windows.clear();
+    }
+
+    /**
+     * Retrieves transactions from the Solr API.
+     *
+     * @param lastTransactionId the last transaction ID that was indexed
+     * @param maxResults the maximum number of results to retrieve
+     * @return a JSON node representing the transactions
+     * @throws Exception if an error occurs during the API request
+     */
+    private JsonNode retrieveTransactions(long lastTransactionId, int maxResults) throws Exception {
+        String endpoint = String.format("transactions?minTxnId=%d&maxResults=%d", lastTransactionId, maxResults);
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.readTree(alfrescoSolrApiClient.executeGetRequest(endpoint));
     }
 
     /**
-     * Processes an individual node, retrieving its content and indexing it.
+     * Reads the transactions of a response of the Solr API.
      *
-     * @param node the node to process
-     * @throws Exception if an error occurs during processing
+     * @param transactionsNode the JSON array of transactions, may be null
+     * @return the transactions, in transaction order
      */
-    private void processNode(Node node) throws Exception {
-        int index = node.getNodeRef().lastIndexOf("/");
-        if (index == -1) {
-            throw new IllegalArgumentException("Invalid node reference: " + node.getNodeRef());
+    private List<Transaction> readTransactions(JsonNode transactionsNode) {
+        List<Transaction> transactions = new ArrayList<>();
+        if (transactionsNode == null || !transactionsNode.isArray()) {
+            return transactions;
         }
-        String uuid = node.getNodeRef().substring(index + 1);
-        String name = node.getProperties().get(CM_NAME).toString();
-        String storeIdentifier = node.getProperties().get(SYS_STORE_IDENTIFIER).toString();
-        String contentId = ((Map<?, ?>) node.getProperties().get(CONTENT)).get("contentId").toString();
-
-        // Retrieve indexed contentId
-        String contentIdInOS = indexer.getContentId(uuid);
-
-        // Avoid processing nodes in ArchiveStore or VersionStore
-        if (storeIdentifier.equals(SPACES_STORE)) {
-            if (!contentId.equals(contentIdInOS)) {
-                String content = alfrescoSolrApiClient.executeGetRequest("textContent?nodeId=" + node.getId());
-                indexer.deleteDocumentIfExists(uuid);
-                indexSegments(uuid, node.getId(), contentId, name, splitIntoSegments(JsonUtils.escape(content)));
-            } else {
-                LOG.debug("Un-indexed: ContentId for node {} has not changed {}", uuid, contentId);
-            }
+        for (JsonNode transactionNode : transactionsNode) {
+            transactions.add(new Transaction(
+                    transactionNode.get("id").asLong(),
+                    transactionNode.path("commitTimeMs").asLong(),
+                    transactionNode.path("updates").asInt(),
+                    transactionNode.path("deletes").asInt()));
         }
+        return transactions;
     }
 
     /**
-     * Indexes segments of a document.
+     * Retrieves the node events of the transactions between the specified minimum and maximum transaction IDs.
      *
-     * @param documentId the ID of the document
-     * @param dbid the ID of the document in the database
-     * @param contentId the ID of the content
-     * @param documentName the name of the document
-     * @param segments the segments to index
+     * @param minTxnId the minimum transaction ID
+     * @param maxTxnId the maximum transaction ID
+     * @return the node events, in transaction order
+     * @throws Exception if an error occurs during the API request
      */
-    private void indexSegments(String documentId, Long dbid, String contentId, String documentName, List<String> segments) {
-        LOG.debug("Indexing {} document parts for {} - {} - {} - {}", segments.size(), dbid, contentId, documentId, documentName);
-        IntStream.range(0, segments.size())
-                .parallel()
-                .forEach(i -> {
-                    String segmentId = documentId + "_" + i;
-                    indexer.index(segmentId, dbid, contentId, documentName, segments.get(i));
-                });
+    private List<TransactionNode> retrieveNodes(long minTxnId, long maxTxnId) throws Exception {
+        String payload = String.format("{\"fromTxnId\": %d, \"toTxnId\": %d}", minTxnId, maxTxnId);
+        String nodesResponse = alfrescoSolrApiClient.executePostRequest("nodes", payload);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        TransactionNodeContainer transactionNodeContainer = objectMapper.readValue(nodesResponse, TransactionNodeContainer.class);
+        return transactionNodeContainer.getNodes();
     }
 
     /**
-     * Splits text into segments for indexing.
+     * Range of transactions whose node events are being retrieved from the repository.
      *
-     * @param text the text to split
-     * @return a list of text segments
+     * @param minTxnId the minimum transaction ID
+     * @param maxTxnId the maximum transaction ID
+     * @param transactions the number of transactions in the range
+     * @param nodes the future node events of the range, in transaction order
      */
-    private static List<String> splitIntoSegments(String text) {
-        text = text.replace("\\n", " ").replace("\\r", " ");
-        text = replaceUnicode(text);
-
-        String[] tokens = text.split("\\s+");
-        List<String> segments = new ArrayList<>();
-        StringBuilder currentSegment = new StringBuilder();
-
-        for (String token : tokens) {
-            if (currentSegment.length() + token.length() + 1 > MAX_TOKENS) {
-                segments.add(currentSegment.toString().trim());
-                currentSegment = new StringBuilder();
-            }
-            currentSegment.append(token).append(" ");
-        }
-
-        if (!currentSegment.isEmpty()) {
-            segments.add(currentSegment.toString().trim());
-        }
-
-        return segments;
+    private record Range(long minTxnId, long maxTxnId, int transactions,
+                         CompletableFuture<List<TransactionNode>> nodes) {
     }
 }
@@ -0,0 +1,177 @@
+package org.alfresco.repo.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far the indexed transaction checkpoint lags behind the repository, and the rate at which it advances,
+ * to estimate the time needed to catch up.
+ * <p>
+ * It also counts the changes of the searchable content, including the ones that do not advance the checkpoint,
+ * such as the retries of journaled operations and the swap of a rebuilt index.
+ */
+@Component
+public class IndexingProgress {
+
+    // Weight of the last indexing run in the smoothed indexing rate
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private volatile long indexedTxnId = -1;
+    private volatile long indexedAt = 0;
+    private volatile long repositoryMaxTxnId = -1;
+    private volatile double rate = 0;
+    private volatile boolean catchingUp = false;
+    private final AtomicLong dataVersion = new AtomicLong();
+    private volatile long changedAt = 0;
+
+    /**
+     * Records the checkpoint an indexing run starts from, without counting it as a change of the searchable content.
+     *
+     * @param indexedTxnId the ID of the last indexed transaction
+     */
+    void startRun(long indexedTxnId) {
+        this.indexedTxnId = indexedTxnId;
+    }
+
+    /**
+     * Records the last indexed transaction, counting a change of the searchable content when the checkpoint moves.
+     *
+     * @param indexedTxnId the ID of the last indexed transaction
+     */
+    void setIndexedTxnId(long indexedTxnId) {
+        long previous = this.indexedTxnId;
+        this.indexedTxnId = indexedTxnId;
+        this.indexedAt = System.currentTimeMillis();
+        if (indexedTxnId != previous) {
+            recordIndexChange();
+        }
+    }
+
+    /**
+     * Records a change of the searchable content that does not advance the checkpoint.
+     */
+    public void recordIndexChange() {
+        changedAt = System.currentTimeMillis();
+        dataVersion.incrementAndGet();
+    }
+
+    /**
+     * Records the maximum transaction ID reported by the repository.
+     *
+     * @param repositoryMaxTxnId the maximum transaction ID in the repository
+     */
+    void setRepositoryMaxTxnId(long repositoryMaxTxnId) {
+        this.repositoryMaxTxnId = repositoryMaxTxnId;
+    }
+
+    /**
+     * Records whether the indexer is running back to back indexing runs to catch up with the repository.
+     *
+     * @param catchingUp true while catching up
+     */
+    void setCatchingUp(boolean catchingUp) {
+        this.catchingUp = catchingUp;
+    }
+
+    /**
+     * Records an indexing run, updating the smoothed indexing rate.
+     *
+     * @param transactions the number of transaction IDs the checkpoint advanced by during the run
+     * @param elapsedMillis the duration of the run in milliseconds
+     */
+    void recordRun(long transactions, long elapsedMillis) {
+        if (transactions <= 0 || elapsedMillis <= 0) {
+            return;
+        }
+        double runRate = transactions * 1000.0 / elapsedMillis;
+        rate = rate == 0 ? runRate : RATE_SMOOTHING * runRate + (1 - RATE_SMOOTHING) * rate;
+    }
+
+    /**
+     * Gets the ID of the last indexed transaction.
+     *
+     * @return the ID of the last indexed transaction, -1 if unknown
+     */
+    public long getIndexedTxnId() {
+        return indexedTxnId;
+    }
+
+    /**
+     * Gets the time the last indexed transaction was recorded.
+     *
+     * @return the time in milliseconds since the epoch, 0 if no transaction has been recorded
+     */
+    public long getIndexedAt() {
+        return indexedAt;
+    }
+
+    /**
+     * Gets the number of changes of the searchable content since startup, which increases every time the checkpoint
+     * advances or the index is changed outside of an indexing run.
+     *
+     * @return the data version
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * Gets the time of the last change of the searchable content.
+     *
+     * @return the time in milliseconds since the epoch, 0 if the content has not changed since startup
+     */
+    public long getChangedAt() {
+        return changedAt;
+    }
+
+    /**
+     * Gets the maximum transaction ID reported by the repository.
+     *
+     * @return the maximum transaction ID in the repository, -1 if unknown
+     */
+    public long getRepositoryMaxTxnId() {
+        return repositoryMaxTxnId;
+    }
+
+    /**
+     * Gets the number of transaction IDs the checkpoint lags behind the repository.
+     *
+     * @return the lag, 0 when caught up or unknown
+     */
+    public long getLag() {
+        return Math.max(0, repositoryMaxTxnId - indexedTxnId);
+    }
+
+    /**
+     * Gets the smoothed rate at which the checkpoint advances.
+     *
+     * @return the indexing rate in transaction IDs per second
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Estimates the time needed to catch up with the repository at the current indexing rate.
+     *
+     * @return the estimated time in seconds, or -1 if the rate is not known yet
+     */
+    public long getEstimatedSecondsToCatchUp() {
+        long lag = getLag();
+        if (lag == 0) {
+            return 0;
+        }
+        return rate > 0 ? Math.round(lag / rate) : -1;
+    }
+
+    /**
+     * Checks whether the indexer is running back to back indexing runs to catch up with the repository.
+     *
+     * @return true while catching up
+     */
+    public boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+}
@@ -0,0 +1,272 @@
+package org.alfresco.repo.service;
+
+import org.alfresco.opensearch.index.Index;
+import org.alfresco.opensearch.ingest.state.NodeStateStore;
+import org.alfresco.repo.service.beans.TransactionNode;
+import org.alfresco.repo.service.pipeline.IngestionPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinates several instances of the indexer sharing the same index, enabled with
+ * {@code batch.indexer.coordination.enabled}.
+ * <p>
+ * Nodes are split into {@code batch.indexer.coordination.partitions} partitions by hashing their UUID, and every
+ * instance leases a fair share of the partitions. An instance reads the whole transaction stream but only processes
+ * the nodes of its partitions, so every node is always processed by a single instance and its events are applied
+ * in transaction order. Every partition has its own transaction checkpoint, stored with its lease.
+ * <p>
+ * Leases are documents of the Alfresco control index, written with {@code op_type=create} or with
+ * {@code if_seq_no} and {@code if_primary_term}, so two instances never hold the same partition. A lease is renewed
+ * whenever its checkpoint advances, at the start of every indexing run and every
+ * {@code batch.indexer.coordination.heartbeatInterval} milliseconds, so it does not expire while a long window is
+ * being processed. It expires after {@code batch.indexer.coordination.leaseDuration} milliseconds without renewal,
+ * so the partitions of a dead instance are taken over by the others. Leases are written by one thread at a time,
+ * since a concurrent write would fail the concurrency control and lose the lease. Instances holding more than their fair share release the extra partitions, so a new instance gets
+ * its share on the next runs.
+ */
+@Component
+public class PartitionLeases {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionLeases.class);
+
+    @Value("${batch.indexer.coordination.enabled}")
+    private boolean enabled;
+
+    @Value("${batch.indexer.coordination.partitions}")
+    private int partitions;
+
+    @Value("${batch.indexer.coordination.leaseDuration}")
+    private long leaseDuration;
+
+    @Value("${batch.indexer.coordination.instanceId:}")
+    private String instanceId;
+
+    @Autowired
+    private Index index;
+
+    @Autowired
+    private NodeStateStore nodeStateStore;
+
+    // Leases held by this instance, by partition number
+    private final Map<Integer, Index.PartitionLease> held = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether the coordination of several instances is enabled.
+     *
+     * @return true if coordination is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the identifier of this instance, the host name followed by a random suffix unless configured.
+     *
+     * @return the identifier of this instance
+     */
+    public synchronized String getInstanceId() {
+        if (instanceId == null || instanceId.isEmpty()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "indexer";
+            }
+            instanceId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        return instanceId;
+    }
+
+    /**
+     * Gets the partitions leased by this instance.
+     *
+     * @return the partition numbers
+     */
+    public Set<Integer> getHeldPartitions() {
+        return Set.copyOf(held.keySet());
+    }
+
+    /**
+     * Renews the leases held by this instance, releases the partitions beyond its fair share and claims free or
+     * expired partitions up to its fair share. The node state store forgets the nodes of newly claimed partitions,
+     * since they may have been indexed by another instance in the meantime.
+     *
+     * @throws Exception if an error occurs while interacting with OpenSearch
+     */
+    public synchronized void renew() throws Exception {
+        long now = System.currentTimeMillis();
+        String owner = getInstanceId();
+        Index.PartitionLease[] leases = index.getPartitionLeases(partitions);
+
+        Set<String> liveOwners = new HashSet<>();
+        liveOwners.add(owner);
+        for (Index.PartitionLease lease : leases) {
+            if (lease != null && !lease.owner().isEmpty() && lease.expiresAt() > now) {
+                liveOwners.add(lease.owner());
+            }
+        }
+        int fairShare = (partitions + liveOwners.size() - 1) / liveOwners.size();
+
+        // Keep up to the fair share of the partitions still owned, release the others
+        int kept = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            Index.PartitionLease lease = leases[partition];
+            if (lease == null || !owner.equals(lease.owner()) || lease.expiresAt() <= now) {
+                if (held.remove(partition) != null) {
+                    LOG.warn("Lease of partition {} has been lost", partition);
+                }
+                continue;
+            }
+            if (kept < fairShare) {
+                Index.PartitionLease renewed = index.writePartitionLease(partition, lease, owner, now + leaseDuration,
+                        lease.lastTransactionId());
+                if (renewed != null) {
+                    held.put(partition, renewed);
+                    kept++;
+                } else {
+                    held.remove(partition);
+                }
+            } else {
+                held.remove(partition);
+                index.writePartitionLease(partition, lease, "", 0, lease.lastTransactionId());
+                LOG.info("Released partition {} to rebalance {} instances", partition, liveOwners.size());
+            }
+        }
+
+        // Claim free or expired partitions up to the fair share
+        List<Integer> claimed = new ArrayList<>();
+        long defaultCheckpoint = -2;
+        for (int partition = 0; partition < partitions && held.size() < fairShare; partition++) {
+            Index.PartitionLease lease = leases[partition];
+            if (lease != null && (lease.owner().isEmpty() || lease.expiresAt() <= now)) {
+                Index.PartitionLease claimedLease = index.writePartitionLease(partition, lease, owner,
+                        now + leaseDuration, lease.lastTransactionId());
+                if (claimedLease != null) {
+                    held.put(partition, claimedLease);
+                    claimed.add(partition);
+                }
+            } else if (lease == null) {
+                // New partitions start from the checkpoint of a single instance deployment
+                if (defaultCheckpoint == -2) {
+                    defaultCheckpoint = index.getAlfrescoIndexField();
+                }
+                Index.PartitionLease created = index.writePartitionLease(partition, null, owner,
+                        now + leaseDuration, defaultCheckpoint);
+                if (created != null) {
+                    held.put(partition, created);
+                    claimed.add(partition);
+                }
+            }
+        }
+        if (!claimed.isEmpty()) {
+            Set<Integer> claimedPartitions = Set.copyOf(claimed);
+            int forgotten = nodeStateStore.removeIf(uuid -> claimedPartitions.contains(partition(uuid)));
+            LOG.info("Instance {} claimed partitions {}, holding {} of {} partitions ({} nodes removed from the "
+                    + "node state store)", owner, claimed, held.size(), partitions, forgotten);
+        }
+    }
+
+    /**
+     * Gets the checkpoint of the partitions held by this instance, the lowest of their checkpoints.
+     *
+     * @return the last transaction indexed for every held partition, or -1 if no partition is held
+     */
+    public long getCheckpoint() {
+        return held.values().stream().mapToLong(Index.PartitionLease::lastTransactionId).min().orElse(-1);
+    }
+
+    /**
+     * Selects the node events handled by this instance: events of the held partitions that are newer than the
+     * checkpoint of their partition.
+     *
+     * @param transactionNodes the node events, in transaction order
+     * @return the selected node events, in transaction order
+     */
+    public List<TransactionNode> select(List<TransactionNode> transactionNodes) {
+        List<TransactionNode> selected = new ArrayList<>();
+        for (TransactionNode transactionNode : transactionNodes) {
+            Index.PartitionLease lease = held.get(partition(IngestionPipeline.uuid(transactionNode.getNodeRef())));
+            if (lease != null && transactionNode.getTxnId() > lease.lastTransactionId()) {
+                selected.add(transactionNode);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Advances the checkpoint of every held partition and renews its lease.
+     *
+     * @param lastTransactionId the last transaction indexed
+     * @throws IllegalStateException if the lease of a partition has been taken by another instance
+     * @throws Exception if an error occurs while interacting with OpenSearch
+     */
+    public synchronized void advance(long lastTransactionId) throws Exception {
+        long expiresAt = System.currentTimeMillis() + leaseDuration;
+        for (Index.PartitionLease lease : List.copyOf(held.values())) {
+            if (lease.lastTransactionId() >= lastTransactionId) {
+                continue;
+            }
+            Index.PartitionLease advanced = index.writePartitionLease(lease.partition(), lease, lease.owner(),
+                    expiresAt, lastTransactionId);
+            if (advanced == null) {
+                held.remove(lease.partition());
+                throw new IllegalStateException("Lease of partition " + lease.partition() + " has been lost");
+            }
+            held.put(lease.partition(), advanced);
+        }
+    }
+
+    /**
+     * Extends the leases held by this instance without changing their checkpoints, so they do not expire while
+     * windows are being processed. A lease taken by another instance in the meantime is dropped, and the checkpoint
+     * of its partition is not advanced any more.
+     */
+    @Scheduled(fixedDelayString = "${batch.indexer.coordination.heartbeatInterval}")
+    public synchronized void heartbeat() {
+        if (!enabled || held.isEmpty()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + leaseDuration;
+        for (Index.PartitionLease lease : List.copyOf(held.values())) {
+            try {
+                Index.PartitionLease extended = index.writePartitionLease(lease.partition(), lease, lease.owner(),
+                        expiresAt, lease.lastTransactionId());
+                if (extended == null) {
+                    held.remove(lease.partition());
+                    LOG.warn("Lease of partition {} has been lost", lease.partition());
+                } else {
+                    held.put(lease.partition(), extended);
+                }
+            } catch (Exception e) {
+                LOG.warn("Lease of partition {} has not been renewed due to the Exception: {}", lease.partition(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the partition of a node.
+     *
+     * @param uuid the UUID of the node
+     * @return the partition number
+     */
+    private int partition(String uuid) {
+        return Math.floorMod(uuid.hashCode(), partitions);
+    }
+
+}
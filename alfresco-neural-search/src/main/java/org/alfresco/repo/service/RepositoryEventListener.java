@@ -0,0 +1,156 @@
+package org.alfresco.repo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.TextMessage;
+import org.alfresco.repo.service.pipeline.NodeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event-driven ingestion, enabled with {@code batch.indexer.events.enabled}.
+ * <p>
+ * Consumes the node events published by the repository to the {@code batch.indexer.events.topic} topic of the
+ * message broker. A created, updated or deleted node of an indexable type requests an indexing run of the
+ * {@link BatchIndexerService} after {@code batch.indexer.events.debounce} milliseconds, so bursts of events are
+ * handled by a single run and changes are indexed within a second instead of waiting for the next cron tick.
+ * <p>
+ * Indexing still goes through the transactions of the Solr API, so events only decide when to index, never what to
+ * index: the checkpoint, ordering and change detection are the same as for the polling path, and the cron schedule
+ * fills any gap left by lost events or a broker outage.
+ */
+@Component
+@ConditionalOnProperty(name = "batch.indexer.events.enabled", havingValue = "true")
+public class RepositoryEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RepositoryEventListener.class);
+
+    // Event types of the repository event model
+    private static final String NODE_CREATED = "org.alfresco.event.node.Created";
+    private static final String NODE_UPDATED = "org.alfresco.event.node.Updated";
+    private static final String NODE_DELETED = "org.alfresco.event.node.Deleted";
+
+    @Value("${batch.indexer.events.debounce}")
+    private long debounce;
+
+    @Autowired
+    private BatchIndexerService batchIndexerService;
+
+    @Autowired
+    private NodeFilter nodeFilter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean runScheduled = new AtomicBoolean();
+    private final AtomicLong receivedEvents = new AtomicLong();
+    private final AtomicLong requestedRuns = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates the thread running the indexing requested by events.
+     */
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "indexer-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOG.info("Event-driven ingestion enabled, indexing {} ms after node events", debounce);
+    }
+
+    /**
+     * Stops the thread running the indexing requested by events.
+     */
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Handles a repository event, requesting an indexing run for node events of indexable types.
+     * Events that cannot be parsed are ignored, the cron schedule indexes their changes anyway.
+     *
+     * @param message the JSON event, as a text or bytes message
+     */
+    @JmsListener(destination = "${batch.indexer.events.topic}")
+    public void onEvent(Message message) {
+        receivedEvents.incrementAndGet();
+        try {
+            JsonNode event = objectMapper.readTree(body(message));
+            String type = event.path("type").asText();
+            if (!NODE_CREATED.equals(type) && !NODE_UPDATED.equals(type) && !NODE_DELETED.equals(type)) {
+                return;
+            }
+            JsonNode resource = event.path("data").path("resource");
+            if (nodeFilter.isIndexableType(resource.path("nodeType").asText())) {
+                LOG.debug("Received {} for node {}", type, resource.path("id").asText());
+                requestRun();
+            }
+        } catch (JMSException | IOException e) {
+            LOG.warn("Repository event has been ignored due to the Exception: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the number of events received from the broker.
+     *
+     * @return the number of received events
+     */
+    public long getReceivedEvents() {
+        return receivedEvents.get();
+    }
+
+    /**
+     * Gets the number of indexing runs requested by events.
+     *
+     * @return the number of requested runs
+     */
+    public long getRequestedRuns() {
+        return requestedRuns.get();
+    }
+
+    /**
+     * Schedules an indexing run after the debounce delay, unless one is already scheduled.
+     */
+    private void requestRun() {
+        if (runScheduled.compareAndSet(false, true)) {
+            requestedRuns.incrementAndGet();
+            scheduler.schedule(() -> {
+                runScheduled.set(false);
+                batchIndexerService.index();
+            }, debounce, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads the body of a message, sent either as text or as UTF-8 bytes.
+     *
+     * @param message the message
+     * @return the body of the message
+     * @throws JMSException if the body cannot be read
+     */
+    private static String body(Message message) throws JMSException {
+        if (message instanceof TextMessage textMessage) {
+            return textMessage.getText();
+        }
+        return new String(message.getBody(byte[].class), StandardCharsets.UTF_8);
+    }
+
+}
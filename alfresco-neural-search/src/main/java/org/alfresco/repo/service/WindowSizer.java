@@ -0,0 +1,146 @@
+package org.alfresco.repo.service;
+
+import org.alfresco.repo.service.beans.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Sizes the transaction windows submitted to the ingestion pipeline by number of nodes rather than by number of
+ * transactions, since a transaction may hold a single node or tens of thousands of them.
+ * <p>
+ * The node budget of a window is the number of nodes the pipeline is expected to process within
+ * {@code batch.indexer.window.targetDuration}, according to the observed processing time per node, and it never
+ * exceeds {@code batch.indexer.window.maxNodes}, which bounds the memory used by the node events of a window.
+ * The budget starts small and at most doubles from one window to the next, so a slow repository is not hit by a
+ * large window before its processing time is known.
+ */
+@Component
+public class WindowSizer {
+
+    // Node budget of the first window, before any processing time has been observed
+    private static final int INITIAL_NODE_BUDGET = 100;
+
+    // Weight of the last observation in the smoothed estimates
+    private static final double SMOOTHING = 0.3;
+
+    @Value("${batch.indexer.transaction.maxResults}")
+    private int maxTransactions;
+
+    @Value("${batch.indexer.window.targetDuration}")
+    private long targetDuration;
+
+    @Value("${batch.indexer.window.maxNodes}")
+    private int maxNodes;
+
+    private volatile int nodeBudget = -1;
+    private volatile double nodesPerTransaction = 0;
+    private volatile double millisPerNode = 0;
+
+    /**
+     * Gets the number of transactions to request for the next window, enough to fill its node budget with the
+     * observed number of nodes per transaction.
+     *
+     * @return the number of transactions to request, between 1 and {@code batch.indexer.transaction.maxResults}
+     */
+    public int getTransactionCount() {
+        if (nodesPerTransaction == 0) {
+            return maxTransactions;
+        }
+        long count = (long) Math.ceil(getNodeBudget() / nodesPerTransaction);
+        return (int) Math.max(1, Math.min(maxTransactions, count));
+    }
+
+    /**
+     * Selects the leading transactions that fit in the node budget of the next window, according to their number
+     * of updates and deletes. The first transaction is always selected, even if it exceeds the budget on its own,
+     * since a transaction cannot be split across windows.
+     *
+     * @param transactions the transactions retrieved from the repository, in transaction order
+     * @return the number of leading transactions to include in the window
+     */
+    public int fit(List<Transaction> transactions) {
+        int budget = getNodeBudget();
+        long nodes = 0;
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            nodes += transaction.getUpdates() + transaction.getDeletes();
+            if (nodes > budget && i > 0) {
+                return i;
+            }
+        }
+        return transactions.size();
+    }
+
+    /**
+     * Records the number of nodes of the transactions of a window, updating the smoothed number of nodes per
+     * transaction.
+     *
+     * @param transactions the number of transactions in the window
+     * @param nodes the number of node events in the window
+     */
+    void recordTransactions(int transactions, int nodes) {
+        if (transactions <= 0) {
+            return;
+        }
+        nodesPerTransaction = smooth(nodesPerTransaction, Math.max(1.0, (double) nodes / transactions));
+    }
+
+    /**
+     * Records the processing time of a completed window, updating the smoothed processing time per node and the
+     * node budget of the next windows.
+     *
+     * @param nodes the number of node events in the window
+     * @param elapsedMillis the time the pipeline spent processing the window, in milliseconds
+     */
+    void recordWindow(int nodes, long elapsedMillis) {
+        if (nodes <= 0 || elapsedMillis <= 0) {
+            return;
+        }
+        millisPerNode = smooth(millisPerNode, (double) elapsedMillis / nodes);
+        long target = Math.round(targetDuration / millisPerNode);
+        long limit = 2L * getNodeBudget();
+        nodeBudget = (int) Math.max(1, Math.min(maxNodes, Math.min(target, limit)));
+    }
+
+    /**
+     * Gets the maximum number of nodes of the next window.
+     *
+     * @return the node budget
+     */
+    public int getNodeBudget() {
+        int budget = nodeBudget;
+        return budget == -1 ? Math.min(maxNodes, INITIAL_NODE_BUDGET) : budget;
+    }
+
+    /**
+     * Gets the smoothed number of nodes per transaction.
+     *
+     * @return the number of nodes per transaction, 0 if not known yet
+     */
+    public double getNodesPerTransaction() {
+        return nodesPerTransaction;
+    }
+
+    /**
+     * Gets the smoothed time the pipeline spends processing a node.
+     *
+     * @return the processing time per node in milliseconds, 0 if not known yet
+     */
+    public double getMillisPerNode() {
+        return millisPerNode;
+    }
+
+    /**
+     * Blends an observation into a smoothed estimate.
+     *
+     * @param estimate the current estimate, 0 if there is none yet
+     * @param observation the observed value
+     * @return the updated estimate
+     */
+    private static double smooth(double estimate, double observation) {
+        return estimate == 0 ? observation : SMOOTHING * observation + (1 - SMOOTHING) * estimate;
+    }
+
+}
@@ -13,11 +13,11 @@ public class Node {
     private String nodeRef; // Node reference identifier
     private String type; // Type of the node
     private int aclId; // Access Control List (ACL) identifier
-    private int txnId; // Transaction identifier
+    private long txnId; // Transaction identifier
     private Map<String, Serializable> properties; // Properties associated with the node
     private List<String> aspects; // Aspects associated with the node
-    private List<String> paths; // Paths to the node
-    private List<String> namePaths; // Paths to the node by name
+    private List<Map<String, Object>> paths; // Paths to the node, with their QName and ancestor paths
+    private List<List<String>> namePaths; // Paths to the node by name, as the names of its ancestors
 
     // Getters and setters
 
@@ -116,7 +116,7 @@ public class Node {
      *
      * @return The transaction identifier.
      */
-    public int getTxnId() {
+    public long getTxnId() {
         return txnId;
     }
 
@@ -125,7 +125,7 @@ public class Node {
      *
      * @param txnId The transaction identifier.
      */
-    public void setTxnId(int txnId) {
+    public void setTxnId(long txnId) {
         this.txnId = txnId;
     }
 
@@ -170,7 +170,7 @@ public class Node {
      *
      * @return The paths to the node.
      */
-    public List<String> getPaths() {
+    public List<Map<String, Object>> getPaths() {
         return paths;
     }
 
@@ -179,7 +179,7 @@ public class Node {
      *
      * @param paths The paths to the node.
      */
-    public void setPaths(List<String> paths) {
+    public void setPaths(List<Map<String, Object>> paths) {
         this.paths = paths;
     }
 
@@ -188,7 +188,7 @@ public class Node {
      *
      * @return The paths to the node by name.
      */
-    public List<String> getNamePaths() {
+    public List<List<String>> getNamePaths() {
         return namePaths;
     }
 
@@ -197,7 +197,7 @@ public class Node {
      *
      * @param namePaths The paths to the node by name.
      */
-    public void setNamePaths(List<String> namePaths) {
+    public void setNamePaths(List<List<String>> namePaths) {
         this.namePaths = namePaths;
     }
 }
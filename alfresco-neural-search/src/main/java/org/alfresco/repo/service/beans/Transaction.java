@@ -4,7 +4,7 @@ package org.alfresco.repo.service.beans;
  * Represents a transaction in the Alfresco repository.
  */
 public class Transaction {
-    private int id; // Unique identifier for the transaction
+    private long id; // Unique identifier for the transaction
     private long commitTimeMs; // Commit time of the transaction in milliseconds
     private int updates; // Number of updates in the transaction
     private int deletes; // Number of deletes in the transaction
@@ -17,7 +17,7 @@ public class Transaction {
      * @param updates      The number of updates in the transaction.
      * @param deletes      The number of deletes in the transaction.
      */
-    public Transaction(int id, long commitTimeMs, int updates, int deletes) {
+    public Transaction(long id, long commitTimeMs, int updates, int deletes) {
         this.id = id;
         this.commitTimeMs = commitTimeMs;
         this.updates = updates;
@@ -29,7 +29,7 @@ public class Transaction {
      *
      * @return The ID of the transaction.
      */
-    public int getId() {
+    public long getId() {
         return id;
     }
 
@@ -38,7 +38,7 @@ public class Transaction {
      *
      * @param id The ID of the transaction.
      */
-    public void setId(int id) {
+    public void setId(long id) {
         this.id = id;
     }
 
@@ -6,7 +6,7 @@ package org.alfresco.repo.service.beans;
 public class TransactionNode {
     private long id; // Unique identifier for the transaction node
     private String nodeRef; // Reference identifier of the node
-    private int txnId; // Transaction identifier associated with the node
+    private long txnId; // Transaction identifier associated with the node
     private String status; // Status of the node within the transaction
     private int aclId; // Access Control List (ACL) identifier of the node
     private String tenant; // Tenant associated with the node
@@ -52,7 +52,7 @@ public class TransactionNode {
      *
      * @return The transaction identifier.
      */
-    public int getTxnId() {
+    public long getTxnId() {
         return txnId;
     }
 
@@ -61,7 +61,7 @@ public class TransactionNode {
      *
      * @param txnId The transaction identifier.
      */
-    public void setTxnId(int txnId) {
+    public void setTxnId(long txnId) {
         this.txnId = txnId;
     }
 
@@ -0,0 +1,513 @@
+package org.alfresco.repo.service.pipeline;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.alfresco.opensearch.client.AlfrescoSolrApiClientFactory;
+import org.alfresco.opensearch.ingest.Indexer;
+import org.alfresco.opensearch.ingest.IngestionExecutor;
+import org.alfresco.opensearch.ingest.chunk.Chunker;
+import org.alfresco.opensearch.ingest.state.NodeState;
+import org.alfresco.opensearch.ingest.state.NodeStateStore;
+import org.alfresco.repo.service.beans.Node;
+import org.alfresco.repo.service.beans.NodeContainer;
+import org.alfresco.repo.service.beans.TransactionNode;
+import org.alfresco.utils.LongIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Staged ingestion pipeline processing the node events of transaction windows.
+ * <p>
+ * The events of a window are collapsed to the latest event of every node, then go through the metadata, content
+ * and index stages, which run concurrently and are connected by bounded queues. Every stage routes the events of
+ * a node to the same worker, so the events of a node are applied in transaction order even when several workers
+ * are configured for a stage.
+ * <p>
+ * The content stage streams the text content of a node through the chunker and sends every segment to the index
+ * stage as soon as it is produced, so the memory used by a node depends on the segment size rather than on the
+ * size of the document.
+ */
+@Component
+public class IngestionPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    // Alfresco Content Model
+    public static final String CM_NAME = "{http://www.alfresco.org/model/content/1.0}name";
+    public static final String CONTENT = "{http://www.alfresco.org/model/content/1.0}content";
+
+    // Maximum number of segment writes of a node running at the same time on the ingestion executor
+    private static final int MAX_PENDING_WRITES = 16;
+
+    // Node status in a transaction
+    public static final String STATUS_UPDATED = "u";
+    public static final String STATUS_DELETED = "d";
+
+    @Value("${batch.indexer.metadata.chunkSize}")
+    private int metadataChunkSize;
+
+    @Value("${batch.indexer.pipeline.queueCapacity}")
+    private int queueCapacity;
+
+    @Value("${batch.indexer.pipeline.metadata.concurrency}")
+    private int metadataConcurrency;
+
+    @Value("${batch.indexer.pipeline.content.concurrency}")
+    private int contentConcurrency;
+
+    @Value("${batch.indexer.content.maxSize}")
+    private long maxContentSize;
+
+    @Value("${batch.indexer.pipeline.index.concurrency}")
+    private int indexConcurrency;
+
+    @Autowired
+    private Indexer indexer;
+
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+
+    @Autowired
+    private Chunker chunker;
+
+    @Autowired
+    private NodeStateStore nodeStateStore;
+
+    @Autowired
+    private NodeFilter nodeFilter;
+
+    @Autowired
+    private AlfrescoSolrApiClientFactory alfrescoSolrApiClient;
+
+    // Number of node events skipped because a later event of the same node was in the same window
+    private final AtomicLong collapsedEvents = new AtomicLong();
+
+    private Stage<NodeTask> metadataStage;
+    private Stage<NodeTask> contentStage;
+    private Stage<SegmentTask> indexStage;
+
+    /**
+     * Creates and starts the stages of the pipeline.
+     */
+    @PostConstruct
+    public void init() {
+        metadataStage = createStage("metadata", metadataConcurrency, metadataChunkSize,
+                NodeTask::stripeKey, task -> task, this::retrieveMetadata);
+        contentStage = createStage("content", contentConcurrency, 1,
+                NodeTask::stripeKey, task -> task, items -> retrieveContent(items.get(0)));
+        indexStage = createStage("index", indexConcurrency, 1,
+                SegmentTask::stripeKey, segment -> segment.task, items -> write(items.get(0)));
+        for (Stage<?> stage : stages()) {
+            stage.start();
+        }
+    }
+
+    /**
+     * Stops the stages of the pipeline.
+     */
+    @PreDestroy
+    public void close() {
+        for (Stage<?> stage : stages()) {
+            stage.stop();
+        }
+    }
+
+    /**
+     * Gets the stages of the pipeline, in processing order.
+     *
+     * @return the stages of the pipeline
+     */
+    public List<Stage<?>> stages() {
+        return List.of(metadataStage, contentStage, indexStage);
+    }
+
+    /**
+     * Submits the node events of a window to the pipeline and seals the window.
+     * Only the latest event of every node is submitted, see {@link #compact(List)}, and events of nodes in stores
+     * excluded by the {@link NodeFilter} are dropped before their metadata is retrieved.
+     * Waits for space in the first stage when it is full. The window fails when interrupted, since some of its
+     * events have not been submitted.
+     *
+     * @param window the window the events belong to
+     * @param transactionNodeList the node events of the window, in transaction order
+     * @throws InterruptedException if interrupted while waiting for space in the pipeline
+     */
+    public void submit(IngestionWindow window, List<TransactionNode> transactionNodeList) throws InterruptedException {
+        try {
+            for (TransactionNode transactionNode : compact(transactionNodeList)) {
+                if (!nodeFilter.acceptsStore(transactionNode.getNodeRef())) {
+                    continue;
+                }
+                NodeTask task = new NodeTask(transactionNode, window);
+                window.add();
+                try {
+                    metadataStage.submit(task);
+                } catch (InterruptedException e) {
+                    window.fail(e);
+                    task.finish();
+                    throw e;
+                }
+            }
+        } finally {
+            window.seal();
+        }
+    }
+
+    /**
+     * Gets the number of node events skipped because a later event of the same node was in the same window.
+     *
+     * @return the number of collapsed node events
+     */
+    public long getCollapsedEvents() {
+        return collapsedEvents.get();
+    }
+
+    /**
+     * Collapses the events of a window to the latest event of every node, since metadata and content are always
+     * retrieved in their current state: a node created and then updated is only processed once, and a node updated
+     * and then deleted is only deleted, without retrieving its metadata and content.
+     *
+     * @param transactionNodeList the node events of the window, in transaction order
+     * @return the latest event of every node, in transaction order
+     */
+    private List<TransactionNode> compact(List<TransactionNode> transactionNodeList) {
+        int size = transactionNodeList.size();
+        LongIntHashMap latest = new LongIntHashMap(size);
+        for (int i = 0; i < size; i++) {
+            latest.put(transactionNodeList.get(i).getId(), i);
+        }
+        if (latest.size() == size) {
+            return transactionNodeList;
+        }
+        List<TransactionNode> compacted = new ArrayList<>(latest.size());
+        for (int i = 0; i < size; i++) {
+            TransactionNode transactionNode = transactionNodeList.get(i);
+            if (latest.get(transactionNode.getId(), -1) == i) {
+                compacted.add(transactionNode);
+            }
+        }
+        collapsedEvents.addAndGet(size - compacted.size());
+        return compacted;
+    }
+
+    /**
+     * Creates a stage whose failures are reported to the windows of the affected tasks. The nodes of the failed
+     * tasks are marked as done, so a failed window still drains.
+     *
+     * @param name the name of the stage
+     * @param concurrency the number of workers of the stage
+     * @param maxBatch the maximum number of tasks handled at once by a worker
+     * @param stripeKey the function providing the key used to route a task to a worker
+     * @param node the function providing the node task of a task
+     * @param handler the handler of the tasks
+     * @param <T> the type of the tasks
+     * @return the stage
+     */
+    private <T> Stage<T> createStage(String name, int concurrency, int maxBatch, ToLongFunction<T> stripeKey,
+                                     Function<T, NodeTask> node, Stage.Handler<T> handler) {
+        return new Stage<>(name, concurrency, queueCapacity, maxBatch, stripeKey, handler,
+                (items, e) -> items.forEach(item -> {
+                    NodeTask task = node.apply(item);
+                    task.window.fail(e);
+                    task.finish();
+                }));
+    }
+
+    /**
+     * Sends a task to the next stage, or completes it when there is nothing left to do or its window has failed.
+     *
+     * @param stage the next stage
+     * @param task the task
+     * @param skip true if the remaining stages have nothing to do for the task
+     * @throws InterruptedException if interrupted while waiting for space in the next stage
+     */
+    private void forward(Stage<NodeTask> stage, NodeTask task, boolean skip) throws InterruptedException {
+        if (skip || task.window.isFailed()) {
+            task.finish();
+        } else {
+            stage.submit(task);
+        }
+    }
+
+    /**
+     * Metadata stage: retrieves the metadata of created or updated nodes with a single call to the Solr API, and
+     * applies the {@link NodeFilter} to it. A node excluded by the filter is skipped, or deleted when it has been
+     * indexed, for instance when an excluded aspect has been added to it. The metadata of the nodes of failed
+     * windows is not retrieved.
+     *
+     * @param tasks the tasks taken from a lane of the stage
+     * @throws Exception if an error occurs during the API request
+     */
+    private void retrieveMetadata(List<NodeTask> tasks) throws Exception {
+        String nodeIds = tasks.stream()
+                .filter(task -> STATUS_UPDATED.equals(task.transactionNode.getStatus()) && !task.window.isFailed())
+                .map(task -> String.valueOf(task.transactionNode.getId()))
+                .distinct()
+                .collect(Collectors.joining(","));
+
+        Map<Long, Node> metadata = new HashMap<>();
+        if (!nodeIds.isEmpty()) {
+            String payload = String.format("""
+                    {
+                        "nodeIds": [%s],
+                        "includeAclId": false,
+                        "includeOwner": false,
+                        "includePaths": %s,
+                        "includeParentAssociations": false,
+                        "includeChildIds": false,
+                        "includeChildAssociations": false
+                    }
+                    """, nodeIds, nodeFilter.requiresPaths());
+            String metadataResponse = alfrescoSolrApiClient.executePostRequest("metadata", payload);
+            ObjectMapper objectMapper = new ObjectMapper();
+            NodeContainer nodeContainer = objectMapper.readValue(metadataResponse, NodeContainer.class);
+            for (Node node : nodeContainer.getNodes()) {
+                metadata.put(node.getId(), node);
+            }
+        }
+
+        // Every task is settled before any is forwarded, so a failure never marks a forwarded task as done
+        boolean[] skip = new boolean[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            NodeTask task = tasks.get(i);
+            switch (task.transactionNode.getStatus()) {
+                // Created or Updated
+                case STATUS_UPDATED:
+                    task.node = metadata.get(task.transactionNode.getId());
+                    if (task.node == null || nodeFilter.accepts(task.node)) {
+                        skip[i] = task.node == null;
+                    } else {
+                        // The document of a node indexed before it was excluded is deleted
+                        task.excluded = isIndexed(uuid(task.transactionNode.getNodeRef()));
+                        skip[i] = !task.excluded;
+                    }
+                    break;
+                // Deleted
+                case STATUS_DELETED:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown status: " + task.transactionNode.getStatus());
+            }
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            forward(contentStage, tasks.get(i), skip[i]);
+        }
+    }
+
+    /**
+     * Checks whether a node has been indexed, using the {@link NodeStateStore} and falling back to OpenSearch when
+     * the node is missing from a store that is not complete.
+     *
+     * @param uuid the UUID of the node
+     * @return true if the node has been indexed
+     * @throws IOException if an error occurs while interacting with OpenSearch
+     */
+    private boolean isIndexed(String uuid) throws IOException {
+        if (nodeStateStore.get(uuid) != null) {
+            return true;
+        }
+        return !nodeStateStore.isComplete() && indexer.getSegmentState(uuid) != null;
+    }
+
+    /**
+     * Content stage: streams the text content of a node through the chunker when it has changed since it was
+     * indexed, sending every segment to the index stage as soon as it is produced. Streaming stops as soon as
+     * the window of the node fails.
+     *
+     * @param task the task
+     * @throws Exception if an error occurs while interacting with the repository or OpenSearch
+     */
+    private void retrieveContent(NodeTask task) throws Exception {
+        if (task.window.isFailed()) {
+            task.finish();
+            return;
+        }
+        if (task.isDelete()) {
+            task.uuid = uuid(task.transactionNode.getNodeRef());
+            // Only the local store is checked, an unknown number of segments is deleted by UUID
+            NodeState state = nodeStateStore.get(task.uuid);
+            if (state != null) {
+                task.indexedState = new Indexer.SegmentState(state.contentId(), state.segmentCount());
+            }
+            indexStage.submit(new SegmentTask(task, 0, null, true));
+            return;
+        }
+
+        Node node = task.node;
+        task.uuid = uuid(node.getNodeRef());
+        task.contentId = ((Map<?, ?>) node.getProperties().get(CONTENT)).get("contentId").toString();
+
+        // Retrieve indexed contentId and number of segments
+        task.indexedState = indexedState(task);
+
+        if (task.indexedState == null || !task.contentId.equals(task.indexedState.contentId())) {
+            task.name = node.getProperties().get(CM_NAME).toString();
+            String firstSegment;
+            try {
+                firstSegment = alfrescoSolrApiClient.executeGetRequest("textContent?nodeId=" + node.getId(), stream -> {
+                    Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+                    String[] first = new String[1];
+                    chunker.split(reader, maxContentSize, segment -> {
+                        if (task.segmentCount == 0) {
+                            first[0] = segment;
+                        } else {
+                            submitSegment(new SegmentTask(task, task.segmentCount, segment, false));
+                        }
+                        task.segmentCount++;
+                    });
+                    return first[0];
+                });
+            } catch (Exception e) {
+                if (task.segmentCount <= 1) {
+                    throw e;
+                }
+                // Segments have been sent to the index stage, its last task completes the node once they are written
+                LOG.error("Error streaming the content of node {}", task.uuid, e);
+                task.window.fail(e);
+                indexStage.submit(new SegmentTask(task, 0, null, true));
+                return;
+            }
+            indexStage.submit(new SegmentTask(task, 0, firstSegment, true));
+        } else {
+            LOG.debug("Un-indexed: ContentId for node {} has not changed {}", task.uuid, task.contentId);
+            task.finish();
+        }
+    }
+
+    /**
+     * Gets the indexed state of a node from the {@link NodeStateStore}, falling back to OpenSearch when the node
+     * is missing from a store that is not complete. A state found in OpenSearch is added to the store.
+     *
+     * @param task the task
+     * @return the indexed state of the node, or null if the node is not indexed
+     * @throws IOException if an error occurs while interacting with OpenSearch
+     */
+    private Indexer.SegmentState indexedState(NodeTask task) throws IOException {
+        NodeState state = nodeStateStore.get(task.uuid);
+        if (state != null) {
+            return new Indexer.SegmentState(state.contentId(), state.segmentCount());
+        }
+        if (nodeStateStore.isComplete()) {
+            return null;
+        }
+        Indexer.SegmentState indexedState = indexer.getSegmentState(task.uuid);
+        if (indexedState != null) {
+            nodeStateStore.put(task.uuid, new NodeState(indexedState.contentId(), indexedState.segmentCount(),
+                    task.transactionNode.getTxnId()));
+        }
+        return indexedState;
+    }
+
+    /**
+     * Sends a segment to the index stage from the chunker callback, which cannot throw checked exceptions.
+     *
+     * @param segment the segment
+     */
+    private void submitSegment(SegmentTask segment) {
+        if (segment.task.window.isFailed()) {
+            throw new CancellationException("Window of node " + segment.task.uuid + " has failed");
+        }
+        try {
+            indexStage.submit(segment);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for space in the index stage");
+        }
+    }
+
+    /**
+     * Index stage: writes the segments of a node to OpenSearch, or deletes them for deleted nodes.
+     * Segments are written in parallel on the ingestion executor. The last task of a node waits for the pending
+     * writes, writes the first segment with the final number of segments and deletes the segments left over from
+     * the previously indexed content. The segments of failed windows are skipped, the last task of a node still
+     * waits for its pending writes so none of them outlives the window.
+     *
+     * @param segment the segment
+     * @throws Exception if an error occurs while interacting with OpenSearch
+     */
+    private void write(SegmentTask segment) throws Exception {
+        NodeTask task = segment.task;
+        if (task.window.isFailed()) {
+            if (segment.last) {
+                CompletableFuture.allOf(task.writes.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+                task.finish();
+            }
+            return;
+        }
+        if (task.isDelete()) {
+            LOG.debug("Deleting document with NodeRef {}", task.transactionNode.getNodeRef());
+            indexer.deleteDocument(task.uuid, task.indexedState == null ? 0 : task.indexedState.segmentCount());
+            nodeStateStore.remove(task.uuid);
+            task.finish();
+            return;
+        }
+
+        if (!segment.last) {
+            if (task.writes.size() == MAX_PENDING_WRITES) {
+                task.writes.removeFirst().join();
+            }
+            task.writes.addLast(ingestionExecutor.runAsync(() -> indexSegment(task, segment.ordinal, null, segment.text)));
+            return;
+        }
+
+        CompletableFuture.allOf(task.writes.toArray(CompletableFuture[]::new)).join();
+        task.writes.clear();
+        LOG.debug("Indexed {} document parts for {} - {} - {} - {}",
+                task.segmentCount, task.node.getId(), task.contentId, task.uuid, task.name);
+        if (segment.text != null) {
+            indexSegment(task, 0, task.segmentCount, segment.text);
+        }
+        // Segments are overwritten in place, so only the ones beyond the new segment count are deleted
+        if (task.indexedState != null && task.indexedState.segmentCount() > task.segmentCount) {
+            indexer.deleteSegments(task.uuid, task.segmentCount, task.indexedState.segmentCount());
+        }
+        nodeStateStore.put(task.uuid, new NodeState(task.contentId, task.segmentCount, task.transactionNode.getTxnId()));
+        task.finish();
+    }
+
+    /**
+     * Writes a segment of a node to OpenSearch.
+     *
+     * @param task the node the segment belongs to
+     * @param ordinal the position of the segment in the document
+     * @param segmentCount the number of segments of the document, or null when it is not known yet
+     * @param text the text of the segment
+     */
+    private void indexSegment(NodeTask task, int ordinal, Integer segmentCount, String text) {
+        indexer.index(task.uuid, ordinal, segmentCount, task.node.getId(), task.contentId, task.name, text);
+    }
+
+    /**
+     * Extracts the UUID from a node reference.
+     *
+     * @param nodeRef the node reference
+     * @return the UUID of the node
+     */
+    public static String uuid(String nodeRef) {
+        int index = nodeRef.lastIndexOf("/");
+        if (index == -1) {
+            throw new IllegalArgumentException("Invalid node reference: " + nodeRef);
+        }
+        return nodeRef.substring(index + 1);
+    }
+
+}
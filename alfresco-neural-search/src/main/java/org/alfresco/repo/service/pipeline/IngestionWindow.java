@@ -0,0 +1,174 @@
+package org.alfresco.repo.service.pipeline;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Range of transactions submitted to the ingestion pipeline, tracking the nodes still being processed.
+ * The window is complete when it has been sealed and every submitted node has been processed, and it fails
+ * as soon as the processing of any of its nodes fails. The stages skip the remaining nodes of a failed window,
+ * which is drained once every submitted node has left the pipeline.
+ */
+public class IngestionWindow {
+
+    private final long minTxnId;
+    private final long maxTxnId;
+    private final int size;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long completedAt;
+
+    // Starts at 1 so the window cannot complete before it is sealed
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+
+    /**
+     * Creates a window for the transactions between the specified IDs.
+     *
+     * @param minTxnId the minimum transaction ID
+     * @param maxTxnId the maximum transaction ID
+     * @param size the number of node events in the transactions
+     */
+    public IngestionWindow(long minTxnId, long maxTxnId, int size) {
+        this.minTxnId = minTxnId;
+        this.maxTxnId = maxTxnId;
+        this.size = size;
+    }
+
+    /**
+     * Gets the minimum transaction ID of the window.
+     *
+     * @return the minimum transaction ID
+     */
+    public long getMinTxnId() {
+        return minTxnId;
+    }
+
+    /**
+     * Gets the maximum transaction ID of the window.
+     *
+     * @return the maximum transaction ID
+     */
+    public long getMaxTxnId() {
+        return maxTxnId;
+    }
+
+    /**
+     * Gets the number of node events in the transactions of the window.
+     *
+     * @return the number of node events
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the time the window was created.
+     *
+     * @return the creation time in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Gets the time every node of the window was processed.
+     *
+     * @return the completion time in milliseconds since the epoch, 0 if the window has not completed successfully
+     */
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Registers a node submitted to the pipeline.
+     */
+    void add() {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Marks a node of the window as processed, skipped or failed.
+     */
+    void done() {
+        if (pending.decrementAndGet() == 0) {
+            completedAt = System.currentTimeMillis();
+            completion.complete(null);
+            drained.complete(null);
+        }
+    }
+
+    /**
+     * Marks the window as failed.
+     *
+     * @param e the cause of the failure
+     */
+    void fail(Throwable e) {
+        completion.completeExceptionally(e);
+    }
+
+    /**
+     * Cancels the window, so the stages skip the nodes of the window they have not processed yet.
+     */
+    public void cancel() {
+        completion.completeExceptionally(new CancellationException("Window has been cancelled"));
+    }
+
+    /**
+     * Checks whether the window has failed or has been cancelled.
+     *
+     * @return true if the window has failed
+     */
+    boolean isFailed() {
+        return completion.isCompletedExceptionally();
+    }
+
+    /**
+     * Declares that every node of the window has been submitted.
+     */
+    void seal() {
+        done();
+    }
+
+    /**
+     * Checks whether the window has completed, successfully or not.
+     *
+     * @return true if the window is complete
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Waits for every node of the window to be processed.
+     *
+     * @throws Exception the cause of the failure if the processing of any node failed
+     */
+    public void await() throws Exception {
+        try {
+            completion.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every node of the window to leave the pipeline, whether it has been processed, skipped or
+     * has failed. Unlike {@link #await()}, it does not return as soon as the window fails.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitDrained() throws InterruptedException {
+        try {
+            drained.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Window cannot fail to drain", e);
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+package org.alfresco.repo.service.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.alfresco.repo.service.beans.Node;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which nodes are indexed, with rules compiled once at startup from the {@code batch.indexer.filter.*}
+ * properties.
+ * <p>
+ * The store rule only needs the node reference, so it runs before the metadata of a node is retrieved. The type,
+ * aspect, path and MIME type rules run on the metadata, before the indexed state of the node is looked up and its
+ * content is retrieved. The indexable types include their subtypes, resolved from the content model of the
+ * repository when {@code batch.indexer.filter.subTypes} is enabled.
+ * <p>
+ * Every rule counts the nodes it accepted (hits) and the nodes it excluded (skips).
+ */
+@Component
+public class NodeFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeFilter.class);
+
+    // Page size of the requests listing the subtypes of a type
+    private static final int TYPES_PAGE_SIZE = 1000;
+
+    /**
+     * Rules of the filter, in evaluation order.
+     */
+    public enum Rule {
+        STORE, TYPE, ASPECT, PATH, MIME_TYPE
+    }
+
+    @Value("${batch.indexer.indexableTypes}")
+    private String indexableTypes;
+
+    @Value("${batch.indexer.filter.subTypes}")
+    private boolean subTypes;
+
+    @Value("${batch.indexer.filter.stores}")
+    private String stores;
+
+    @Value("${batch.indexer.filter.excludedAspects}")
+    private String excludedAspects;
+
+    @Value("${batch.indexer.filter.paths}")
+    private String paths;
+
+    @Value("${batch.indexer.filter.mimeTypes}")
+    private String mimeTypes;
+
+    @Value("${content.service.url}")
+    private String url;
+
+    @Value("${content.service.path}")
+    private String apiPath;
+
+    @Value("${content.service.security.basicAuth.username}")
+    private String username;
+
+    @Value("${content.service.security.basicAuth.password}")
+    private String password;
+
+    private Set<String> storeSet;
+    private Set<String> typeSet;
+    private Set<String> excludedAspectSet;
+    private List<String> pathPrefixes;
+    private Set<String> mimeTypeSet;
+
+    private final AtomicLongArray hits = new AtomicLongArray(Rule.values().length);
+    private final AtomicLongArray skips = new AtomicLongArray(Rule.values().length);
+
+    /**
+     * Compiles the rules of the filter and resolves the subtypes of the indexable types. When the subtypes cannot
+     * be resolved, only the configured types are indexed.
+     */
+    @PostConstruct
+    public void init() {
+        storeSet = split(stores);
+        excludedAspectSet = split(excludedAspects);
+        mimeTypeSet = split(mimeTypes);
+        pathPrefixes = split(paths).stream()
+                .map(path -> path.endsWith("/") ? path.substring(0, path.length() - 1) : path)
+                .collect(Collectors.toList());
+        typeSet = new HashSet<>(split(indexableTypes));
+        if (subTypes) {
+            for (String type : split(indexableTypes)) {
+                try {
+                    typeSet.addAll(subTypes(type));
+                } catch (IOException e) {
+                    LOG.warn("Subtypes of {} have not been resolved due to the Exception: {}", type, e.getMessage());
+                }
+            }
+        }
+        LOG.info("Indexing nodes of types {} in stores {}", typeSet, storeSet);
+    }
+
+    /**
+     * Checks whether the paths of the nodes are required by the rules, so they are only retrieved with the
+     * metadata when a path rule is configured.
+     *
+     * @return true if a path rule is configured
+     */
+    public boolean requiresPaths() {
+        return !pathPrefixes.isEmpty();
+    }
+
+    /**
+     * Applies the store rule to a node event, before its metadata is retrieved.
+     *
+     * @param nodeRef the node reference, such as {@code workspace://SpacesStore/{uuid}}
+     * @return true if the store of the node is indexed
+     */
+    public boolean acceptsStore(String nodeRef) {
+        int index = nodeRef.lastIndexOf('/');
+        return count(Rule.STORE, storeSet.isEmpty() || (index != -1 && storeSet.contains(nodeRef.substring(0, index))));
+    }
+
+    /**
+     * Applies the type, aspect, path and MIME type rules to the metadata of a node, stopping at the first rule
+     * excluding the node.
+     *
+     * @param node the metadata of the node
+     * @return true if the node is indexed
+     */
+    public boolean accepts(Node node) {
+        return count(Rule.TYPE, isIndexableType(node.getType()))
+                && count(Rule.ASPECT, hasNoExcludedAspect(node))
+                && count(Rule.PATH, isInPaths(node))
+                && count(Rule.MIME_TYPE, hasIndexableContent(node));
+    }
+
+    /**
+     * Checks if the node type is one of the indexable types or one of their subtypes, without counting it.
+     *
+     * @param type the node type
+     * @return true if the type is indexable, false otherwise
+     */
+    public boolean isIndexableType(String type) {
+        return typeSet.contains(type);
+    }
+
+    /**
+     * Gets the number of nodes accepted and excluded by every rule.
+     *
+     * @return the hits and skips of every rule, by rule name
+     */
+    public Map<String, Map<String, Long>> getCounters() {
+        Map<String, Map<String, Long>> counters = new LinkedHashMap<>();
+        for (Rule rule : Rule.values()) {
+            Map<String, Long> counter = new LinkedHashMap<>();
+            counter.put("hits", hits.get(rule.ordinal()));
+            counter.put("skips", skips.get(rule.ordinal()));
+            counters.put(rule.name().toLowerCase(), counter);
+        }
+        return counters;
+    }
+
+    /**
+     * Checks that a node has none of the excluded aspects.
+     *
+     * @param node the metadata of the node
+     * @return true if the node has no excluded aspect
+     */
+    private boolean hasNoExcludedAspect(Node node) {
+        if (excludedAspectSet.isEmpty() || node.getAspects() == null) {
+            return true;
+        }
+        for (String aspect : node.getAspects()) {
+            if (excludedAspectSet.contains(aspect)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that one of the paths of a node starts with one of the path prefixes. Paths are made of the names of
+     * the ancestors of the node, such as {@code /Company Home/Sites/swsdp/documentLibrary}.
+     *
+     * @param node the metadata of the node
+     * @return true if no path prefix is configured or a path of the node starts with a path prefix
+     */
+    private boolean isInPaths(Node node) {
+        if (pathPrefixes.isEmpty()) {
+            return true;
+        }
+        if (node.getNamePaths() == null) {
+            return false;
+        }
+        for (List<String> namePath : node.getNamePaths()) {
+            String path = "/" + String.join("/", namePath);
+            for (String prefix : pathPrefixes) {
+                if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that a node has content with one of the indexable MIME types.
+     *
+     * @param node the metadata of the node
+     * @return true if the node has content and no MIME type is configured or its MIME type is configured
+     */
+    private boolean hasIndexableContent(Node node) {
+        if (!(node.getProperties().get(IngestionPipeline.CONTENT) instanceof Map<?, ?> content)) {
+            return false;
+        }
+        return mimeTypeSet.isEmpty() || mimeTypeSet.contains(String.valueOf(content.get("mimetype")));
+    }
+
+    /**
+     * Counts the result of a rule.
+     *
+     * @param rule the rule
+     * @param accepted true if the rule accepted the node
+     * @return the result of the rule
+     */
+    private boolean count(Rule rule, boolean accepted) {
+        (accepted ? hits : skips).incrementAndGet(rule.ordinal());
+        return accepted;
+    }
+
+    /**
+     * Lists the subtypes of a type with the types endpoint of the REST API of the repository.
+     *
+     * @param type the prefixed name of the type, such as {@code cm:content}
+     * @return the prefixed names of every subtype of the type
+     * @throws IOException if an error occurs while interacting with the repository
+     */
+    private Set<String> subTypes(String type) throws IOException {
+        Set<String> types = new HashSet<>();
+        String where = URLEncoder.encode("(parentIds in ('" + type + "'))", StandardCharsets.UTF_8);
+        String authorization = "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            boolean hasMoreItems = true;
+            for (int skipCount = 0; hasMoreItems; skipCount += TYPES_PAGE_SIZE) {
+                HttpGet request = new HttpGet(url + apiPath + "/types?where=" + where
+                        + "&skipCount=" + skipCount + "&maxItems=" + TYPES_PAGE_SIZE);
+                request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+                String body = httpClient.execute(request, response -> {
+                    if (response.getCode() >= 300) {
+                        throw new IOException("Types request failed with status " + response.getCode());
+                    }
+                    return EntityUtils.toString(response.getEntity());
+                });
+                JsonNode list = objectMapper.readTree(body).path("list");
+                for (JsonNode entry : list.path("entries")) {
+                    types.add(entry.path("entry").path("id").asText());
+                }
+                hasMoreItems = list.path("pagination").path("hasMoreItems").asBoolean();
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Splits a comma separated property value.
+     *
+     * @param value the property value
+     * @return the trimmed, non-empty values
+     */
+    private static Set<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+}
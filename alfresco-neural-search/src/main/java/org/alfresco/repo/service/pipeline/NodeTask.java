@@ -0,0 +1,72 @@
+package org.alfresco.repo.service.pipeline;
+
+import org.alfresco.opensearch.ingest.Indexer;
+import org.alfresco.repo.service.beans.Node;
+import org.alfresco.repo.service.beans.TransactionNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Node event flowing through the stages of the ingestion pipeline.
+ * Every stage fills the fields required by the next one and releases the ones that are no longer needed.
+ */
+class NodeTask {
+
+    final TransactionNode transactionNode; // Raw node event from the transaction
+    final IngestionWindow window; // Window the event belongs to
+
+    Node node; // Node metadata, set by the metadata stage
+    boolean excluded; // Whether an indexed node has been excluded by the node filter, set by the metadata stage
+    String uuid; // UUID of the node, set by the content stage
+    String contentId; // Id of the current content, set by the content stage
+    Indexer.SegmentState indexedState; // Indexed state of the node, set by the content stage
+    String name; // Name of the node, set by the content stage
+    int segmentCount; // Number of segments of the new content, set by the content stage
+    final Deque<CompletableFuture<Void>> writes = new ArrayDeque<>(); // Pending segment writes, used by the index stage
+    private final AtomicBoolean finished = new AtomicBoolean(); // Whether the task has been counted in its window
+
+    /**
+     * Creates a task for a node event.
+     *
+     * @param transactionNode the raw node event
+     * @param window the window the event belongs to
+     */
+    NodeTask(TransactionNode transactionNode, IngestionWindow window) {
+        this.transactionNode = transactionNode;
+        this.window = window;
+    }
+
+    /**
+     * Checks whether the document of the node is deleted, because the node has been deleted or excluded by the
+     * node filter.
+     *
+     * @return true if the document of the node is deleted
+     */
+    boolean isDelete() {
+        return excluded || IngestionPipeline.STATUS_DELETED.equals(transactionNode.getStatus());
+    }
+
+    /**
+     * Marks the node as done in its window, whether it has been processed, skipped or has failed.
+     * A task is counted once, even when it fails after a stage has already completed it.
+     */
+    void finish() {
+        if (finished.compareAndSet(false, true)) {
+            window.done();
+        }
+    }
+
+    /**
+     * Gets the key used to route the task to the same worker in every stage, so the events of a node
+     * are applied in transaction order.
+     *
+     * @return the stripe key of the task
+     */
+    long stripeKey() {
+        return transactionNode.getId();
+    }
+
+}
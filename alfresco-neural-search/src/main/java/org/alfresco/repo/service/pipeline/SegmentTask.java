@@ -0,0 +1,40 @@
+package org.alfresco.repo.service.pipeline;
+
+/**
+ * Segment of a node flowing from the content stage to the index stage of the ingestion pipeline.
+ * <p>
+ * Segments are sent as soon as the chunker produces them. The first segment is held back and sent last, carrying
+ * the final number of segments, so it is only overwritten once every other segment of the new content is written.
+ */
+class SegmentTask {
+
+    final NodeTask task; // Node the segment belongs to
+    final int ordinal; // Position of the segment in the document
+    final String text; // Text of the segment, null for deleted nodes or documents without text
+    final boolean last; // Whether this is the last task sent for the node
+
+    /**
+     * Creates a segment task.
+     *
+     * @param task the node the segment belongs to
+     * @param ordinal the position of the segment in the document
+     * @param text the text of the segment
+     * @param last true if this is the last task sent for the node
+     */
+    SegmentTask(NodeTask task, int ordinal, String text, boolean last) {
+        this.task = task;
+        this.ordinal = ordinal;
+        this.text = text;
+        this.last = last;
+    }
+
+    /**
+     * Gets the key used to route the segment to the same worker as the other segments of its node.
+     *
+     * @return the stripe key of the node
+     */
+    long stripeKey() {
+        return task.stripeKey();
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.alfresco.repo.service.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Stage of the ingestion pipeline, made of a number of workers consuming items from bounded queues.
+ * <p>
+ * Every worker owns its own queue (lane) and items are routed to a lane by their stripe key, so items sharing
+ * the same key are always handled by the same worker in the order they were submitted. Submitting an item to a
+ * full lane blocks the caller, which propagates backpressure to the previous stage.
+ *
+ * @param <T> the type of the items handled by the stage
+ */
+public class Stage<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Stage.class);
+
+    /**
+     * Handles a batch of items taken from the same lane, in submission order.
+     *
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(List<T> items) throws Exception;
+    }
+
+    private final String name;
+    private final int maxBatch;
+    private final ToLongFunction<T> stripeKey;
+    private final Handler<T> handler;
+    private final BiConsumer<List<T>, Exception> errorHandler;
+    private final List<BlockingQueue<T>> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * Creates a stage.
+     *
+     * @param name the name of the stage, used for worker thread names
+     * @param concurrency the number of workers
+     * @param queueCapacity the capacity of the queue in front of every worker
+     * @param maxBatch the maximum number of items handled in a single invocation of the handler
+     * @param stripeKey the function providing the key used to route an item to a worker
+     * @param handler the handler of the items
+     * @param errorHandler invoked with the items of a batch when the handler fails
+     */
+    public Stage(String name, int concurrency, int queueCapacity, int maxBatch, ToLongFunction<T> stripeKey,
+                 Handler<T> handler, BiConsumer<List<T>, Exception> errorHandler) {
+        this.name = name;
+        this.maxBatch = maxBatch;
+        this.stripeKey = stripeKey;
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        for (int i = 0; i < concurrency; i++) {
+            lanes.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+    }
+
+    /**
+     * Starts the workers of the stage.
+     */
+    public synchronized void start() {
+        for (int i = 0; i < lanes.size(); i++) {
+            BlockingQueue<T> lane = lanes.get(i);
+            Thread worker = new Thread(() -> work(lane), "ingest-" + name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Stops the workers of the stage. Items still queued are discarded.
+     */
+    public synchronized void stop() {
+        workers.forEach(Thread::interrupt);
+        workers.clear();
+    }
+
+    /**
+     * Submits an item to the lane selected by its stripe key, waiting for space if the lane is full.
+     *
+     * @param item the item to submit
+     * @throws InterruptedException if interrupted while waiting for space in the lane
+     */
+    public void submit(T item) throws InterruptedException {
+        int lane = (int) Math.floorMod(stripeKey.applyAsLong(item), (long) lanes.size());
+        lanes.get(lane).put(item);
+    }
+
+    /**
+     * Gets the name of the stage.
+     *
+     * @return the name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of items waiting in the queues of the stage.
+     *
+     * @return the number of queued items
+     */
+    public int getQueueDepth() {
+        return lanes.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * Worker loop, handling batches of items taken from a lane until the worker is interrupted.
+     *
+     * @param lane the queue consumed by the worker
+     */
+    private void work(BlockingQueue<T> lane) {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<T> items = new ArrayList<>(maxBatch);
+            try {
+                items.add(lane.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            lane.drainTo(items, maxBatch - 1);
+            try {
+                handler.handle(items);
+            } catch (InterruptedException e) {
+                errorHandler.accept(items, e);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.error("Error in ingestion stage {}", name, e);
+                errorHandler.accept(items, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.alfresco.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.alfresco.opensearch.search.Search;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opaque continuation token of a paged search, returned in the {@code X-Next-Page-Token} header and sent back in
+ * the {@code pageToken} parameter to get the next page.
+ * <p>
+ * The token is the URL-safe Base64 encoding of the {@link Search.Cursor} of the next page, bound to the search it
+ * was returned for, so it cannot be used to page through the results of another search.
+ */
+public final class PageToken {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private PageToken() {
+    }
+
+    /**
+     * Encodes the cursor of the next page of a search.
+     *
+     * @param key the key of the search, see {@link SearchResultCache#key(Object...)}
+     * @param cursor the cursor of the next page
+     * @return the continuation token
+     * @throws IOException if the token cannot be written
+     */
+    public static String encode(String key, Search.Cursor cursor) throws IOException {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("k", key.hashCode());
+        token.put("p", cursor.pitId());
+        token.put("s", cursor.score());
+        token.put("u", cursor.uuid());
+        token.put("o", cursor.ordinal());
+        token.put("n", cursor.offset());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(OBJECT_MAPPER.writeValueAsBytes(token));
+    }
+
+    /**
+     * Decodes the cursor of a continuation token.
+     *
+     * @param key the key of the search, see {@link SearchResultCache#key(Object...)}
+     * @param token the continuation token
+     * @return the cursor of the page
+     * @throws IllegalArgumentException if the token is malformed or has been returned for another search
+     */
+    public static Search.Cursor decode(String key, String token) {
+        JsonNode node;
+        try {
+            node = OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(token));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token", e);
+        }
+        if (node == null || node.path("k").asInt() != key.hashCode() || !node.path("u").isTextual()) {
+            throw new IllegalArgumentException("Page token does not belong to this search");
+        }
+        String pitId = node.path("p").isTextual() ? node.path("p").asText() : null;
+        return new Search.Cursor(pitId, node.path("s").asDouble(), node.path("u").asText(),
+                node.path("o").asInt(), node.path("n").asInt());
+    }
+
+}
@@ -0,0 +1,277 @@
+package org.alfresco.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.alfresco.opensearch.client.JsonBody;
+import org.alfresco.opensearch.search.Search;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the body of search responses straight from the stream of tokens of the OpenSearch response, without
+ * building a tree of the response or intermediate result objects.
+ * <p>
+ * Every result is a JSON object with the {@code uuid}, {@code name}, {@code text} and {@code score} of a segment,
+ * and also the number of {@code matches} of a document for document-level results. The values of segment results
+ * are copied from the parser to the generator as they are read, so the text of the segments is never materialized
+ * as a {@code String}. The body is encoded to a byte array, since the ETag and the continuation token of a page are
+ * only known once every segment has been read, and the same bytes are kept by the {@link SearchResultCache}.
+ */
+public final class SearchResponseWriter {
+
+    /**
+     * Body of a page of results.
+     *
+     * @param body the UTF-8 bytes of the JSON array of results
+     * @param hits the number of segments in the OpenSearch response
+     * @param pitId the ID of the point-in-time reader returned with the response, or null
+     * @param last the position of the last segment on the point-in-time reader, or null if the segments are not
+     *             sorted
+     */
+    public record Page(byte[] body, int hits, String pitId, Search.Cursor last) {
+
+        /**
+         * Gets the cursor of the page following this page.
+         *
+         * @param offset the number of segments returned by this page and the previous pages
+         * @return the cursor of the next page, or null if the segments are not sorted
+         */
+        public Search.Cursor next(int offset) {
+            return last == null ? null : new Search.Cursor(pitId, last.score(), last.uuid(), last.ordinal(), offset);
+        }
+    }
+
+    /**
+     * Reads a hit of the OpenSearch response, the parser being on the start of the hit object.
+     */
+    @FunctionalInterface
+    private interface HitReader {
+        void read(Hit hit) throws IOException;
+    }
+
+    private SearchResponseWriter() {
+    }
+
+    /**
+     * Writes a result for every segment of an OpenSearch response.
+     *
+     * @param parser the parser of the OpenSearch response
+     * @return the page of segment results
+     * @throws IOException if the response cannot be read
+     */
+    public static Page segments(JsonParser parser) throws IOException {
+        ResponseState state = new ResponseState();
+        byte[] body = JsonBody.bytes(generator -> {
+            generator.writeStartArray();
+            readResponse(parser, state, hit -> {
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "_score" -> copyField(parser, generator, "score");
+                        case "_source" -> {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String sourceField = parser.currentName();
+                                parser.nextToken();
+                                switch (sourceField) {
+                                    case "id" -> copyField(parser, generator, "uuid");
+                                    case "name", "text" -> copyField(parser, generator, sourceField);
+                                    default -> parser.skipChildren();
+                                }
+                            }
+                        }
+                        case "sort" -> readSort(parser, hit);
+                        default -> parser.skipChildren();
+                    }
+                }
+                generator.writeEndObject();
+            });
+            generator.writeEndArray();
+        });
+        return state.page(body);
+    }
+
+    /**
+     * Groups the segments of an OpenSearch response by document, and writes a result for every document with its
+     * best matching segment. Segments are sorted by score, so the first segment of a document is its best matching
+     * segment, and its score is the score of the document. The text of the other segments is skipped.
+     *
+     * @param parser the parser of the OpenSearch response
+     * @param maxDocuments the maximum number of documents to return
+     * @return the page of document results
+     * @throws IOException if the response cannot be read
+     */
+    public static Page documents(JsonParser parser, int maxDocuments) throws IOException {
+        ResponseState state = new ResponseState();
+        Map<String, DocumentResult> documents = new LinkedHashMap<>();
+        readResponse(parser, state, hit -> {
+            String uuid = null;
+            String name = null;
+            String text = null;
+            double score = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "_score" -> score = parser.getValueAsDouble();
+                    case "_source" -> {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String sourceField = parser.currentName();
+                            parser.nextToken();
+                            // Fields of a document already known are not needed
+                            boolean needed = uuid == null
+                                    || (!documents.containsKey(uuid) && documents.size() < maxDocuments);
+                            switch (sourceField) {
+                                case "uuid" -> uuid = parser.getValueAsString();
+                                case "name" -> name = needed ? parser.getValueAsString() : null;
+                                case "text" -> text = needed ? parser.getValueAsString() : null;
+                                default -> parser.skipChildren();
+                            }
+                        }
+                    }
+                    case "sort" -> readSort(parser, hit);
+                    default -> parser.skipChildren();
+                }
+            }
+            DocumentResult document = documents.get(uuid);
+            if (document != null) {
+                document.matches++;
+            } else if (uuid != null && documents.size() < maxDocuments) {
+                documents.put(uuid, new DocumentResult(name, text, score));
+            }
+        });
+        byte[] body = JsonBody.bytes(generator -> {
+            generator.writeStartArray();
+            for (Map.Entry<String, DocumentResult> entry : documents.entrySet()) {
+                DocumentResult document = entry.getValue();
+                generator.writeStartObject();
+                generator.writeStringField("uuid", entry.getKey());
+                generator.writeStringField("name", document.name);
+                generator.writeStringField("text", document.text);
+                generator.writeNumberField("score", document.score);
+                generator.writeNumberField("matches", document.matches);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        });
+        return state.page(body);
+    }
+
+    /**
+     * Reads an OpenSearch search response, handing every hit to a reader.
+     *
+     * @param parser the parser of the OpenSearch response
+     * @param state the state of the response, updated with the point-in-time reader and the last hit
+     * @param hitReader the reader of the hits
+     * @throws IOException if the response cannot be read
+     */
+    private static void readResponse(JsonParser parser, ResponseState state, HitReader hitReader) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Search response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("pit_id")) {
+                state.pitId = parser.getValueAsString();
+            } else if (field.equals("hits") && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsField = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && hitsField.equals("hits")) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            state.hits++;
+                            hitReader.read(state.last);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Reads the sort values of a hit: its score, and the UUID and ordinal of the segment.
+     *
+     * @param parser the parser, on the start of the sort values
+     * @param hit the last hit, updated with the sort values
+     * @throws IOException if the sort values cannot be read
+     */
+    private static void readSort(JsonParser parser, Hit hit) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        for (int index = 0; parser.nextToken() != JsonToken.END_ARRAY; index++) {
+            switch (index) {
+                case 0 -> hit.score = parser.getValueAsDouble();
+                case 1 -> hit.uuid = parser.getValueAsString();
+                case 2 -> hit.ordinal = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        hit.sorted = true;
+    }
+
+    /**
+     * Copies the current value of the parser to a field of the generator.
+     *
+     * @param parser the parser, on a scalar value
+     * @param generator the generator of the response body
+     * @param name the name of the field
+     * @throws IOException if the value cannot be copied
+     */
+    private static void copyField(JsonParser parser, JsonGenerator generator, String name) throws IOException {
+        generator.writeFieldName(name);
+        generator.copyCurrentStructure(parser);
+    }
+
+    /**
+     * Point-in-time reader and number of hits of an OpenSearch response, with the sort values of its last hit.
+     */
+    private static class ResponseState {
+        private String pitId;
+        private int hits;
+        private final Hit last = new Hit();
+
+        private Page page(byte[] body) {
+            Search.Cursor cursor = last.sorted
+                    ? new Search.Cursor(pitId, last.score, last.uuid, last.ordinal, 0)
+                    : null;
+            return new Page(body, hits, pitId, cursor);
+        }
+    }
+
+    /**
+     * Sort values of a hit.
+     */
+    private static class Hit {
+        private boolean sorted;
+        private double score;
+        private String uuid;
+        private int ordinal;
+    }
+
+    /**
+     * Document of document-level results, with its best matching segment.
+     */
+    private static class DocumentResult {
+        private final String name;
+        private final String text;
+        private final double score;
+        private int matches = 1;
+
+        private DocumentResult(String name, String text, double score) {
+            this.name = name;
+            this.text = text;
+            this.score = score;
+        }
+    }
+
+}
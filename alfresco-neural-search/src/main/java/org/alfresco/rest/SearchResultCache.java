@@ -0,0 +1,257 @@
+package org.alfresco.rest;
+
+import org.alfresco.repo.service.IndexingProgress;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of search results, versioned by the data version of the index.
+ * <p>
+ * The data version, see {@link IndexingProgress#getDataVersion()}, increases when the checkpoint advances and when
+ * the index changes outside of an indexing run, such as when journaled operations are retried or a rebuilt index is
+ * swapped in. A cached result is valid as long as the data version has not changed since it was cached. Results are
+ * not cached during the refresh interval following a change, since the latest changes may not be searchable yet.
+ * <p>
+ * The cache holds at most {@code opensearch.search.resultCache.size} results and
+ * {@code opensearch.search.resultCache.maxBytes} bytes of response bodies, and evicts the least recently used
+ * results first.
+ * Every cacheable result has an ETag, derived from the checkpoint and the key of the result, so clients can
+ * revalidate it with {@code If-None-Match} even after it has been evicted.
+ * The ETag is a 128-bit SHA-256 digest of the key, the checkpoint and the data version, salted with an ID of the
+ * running instance, since the data version starts over at every startup.
+ * <p>
+ * The data version only counts the changes made by this instance, so the cache is disabled when several instances
+ * share the index, see {@code batch.indexer.coordination.enabled}.
+ */
+@Component
+public class SearchResultCache {
+
+    // Time in milliseconds for indexed changes to become searchable, the default refresh interval of the index
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    // Distinguishes the ETags of the running instance from the ones returned before a restart
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    @Value("${opensearch.search.resultCache.size}")
+    private int maxEntries;
+
+    @Value("${opensearch.search.resultCache.maxBytes}")
+    private long maxBytes;
+
+    @Value("${batch.indexer.coordination.enabled}")
+    private boolean coordinated;
+
+    @Autowired
+    private IndexingProgress indexingProgress;
+
+    // Cached results by key, in access order, guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Cached search result.
+     *
+     * @param version the data version of the result
+     * @param etag the ETag of the result
+     * @param body the response body of the result, see {@link SearchResponseWriter}
+     * @param nextPageToken the continuation token of the next page, or null if there is no next page
+     * @param bytes the estimated size of the result
+     */
+    public record Entry(long version, String etag, byte[] body, String nextPageToken, long bytes) {
+    }
+
+    /**
+     * Builds the key of a search result.
+     *
+     * @param parts the parameters of the search, such as the query, the search type and the number of results
+     * @return the key of the result
+     */
+    public static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            key.append(part).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the version of the results, the current data version of the index.
+     *
+     * @return the current version
+     */
+    public long getVersion() {
+        return indexingProgress.getDataVersion();
+    }
+
+    /**
+     * Gets the ETag of the result of a search for the current version.
+     *
+     * @param key the key of the result
+     * @return the quoted ETag, or null if the result is not cacheable
+     */
+    public String etag(String key) {
+        long version = getVersion();
+        return isCacheable(version) ? etag(key, version) : null;
+    }
+
+    /**
+     * Gets the cached result of a search, if it is still valid for the current version.
+     *
+     * @param key the key of the result
+     * @return the cached result, or null if there is no valid result
+     */
+    public Entry get(String key) {
+        long version = getVersion();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version() == version) {
+                hits.incrementAndGet();
+                return entry;
+            }
+            if (entry != null) {
+                remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the result of a search, unless the latest indexed changes may not be searchable yet.
+     *
+     * @param key the key of the result
+     * @param version the version read before the search was run
+     * @param body the response body of the result
+     * @param nextPageToken the continuation token of the next page, or null if there is no next page
+     * @return the cached result, or null if the result has not been cached
+     */
+    public Entry put(String key, long version, byte[] body, String nextPageToken) {
+        if (!isCacheable(version)) {
+            return null;
+        }
+        long size = body.length + 2L * length(nextPageToken);
+        if (size > maxBytes) {
+            return null;
+        }
+        Entry entry = new Entry(version, etag(key, version), body, nextPageToken, size);
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().bytes();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the number of results in the cache.
+     *
+     * @return the number of cached results
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the estimated size of the results in the cache.
+     *
+     * @return the size of the cached results in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the number of searches answered from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of searches sent to OpenSearch.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Checks whether the results of a version can be cached: the cache is enabled, the index is not shared with
+     * other instances, the version is still the current one and its changes are searchable.
+     *
+     * @param version the version
+     * @return true if the results can be cached
+     */
+    private boolean isCacheable(long version) {
+        return maxEntries > 0 && !coordinated && version == getVersion()
+                && System.currentTimeMillis() - indexingProgress.getChangedAt() >= REFRESH_INTERVAL_MS;
+    }
+
+    /**
+     * Removes a cached result.
+     *
+     * @param key the key of the result
+     */
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes();
+        }
+    }
+
+    /**
+     * Builds the ETag of a result from the key and the version of the result.
+     *
+     * @param key the key of the result
+     * @param version the version of the result
+     * @return the quoted ETag
+     */
+    private String etag(String key, long version) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(INSTANCE_ID.getBytes(StandardCharsets.UTF_8));
+            digest.update(ByteBuffer.allocate(2 * Long.BYTES)
+                    .putLong(indexingProgress.getIndexedTxnId())
+                    .putLong(version)
+                    .array());
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Gets the length of a string that may be null.
+     *
+     * @param value the string
+     * @return the length of the string, 0 if null
+     */
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+}
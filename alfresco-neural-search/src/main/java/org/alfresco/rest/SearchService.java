@@ -1,15 +1,20 @@
 package org.alfresco.rest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import org.alfresco.opensearch.search.Search;
-import org.alfresco.utils.JsonUtils;
+import org.opensearch.client.ResponseException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 /**
  * Controller class for handling search requests.
@@ -17,47 +22,182 @@ import java.util.List;
 @RestController
 public class SearchService {
 
+    // Response header holding the continuation token of the next page
+    public static final String NEXT_PAGE_TOKEN = "X-Next-Page-Token";
+
+    @Value("${opensearch.results.count}")
+    private int resultsCount;
+
+    @Value("${opensearch.search.documentOversampling}")
+    private int documentOversampling;
+
+    @Value("${opensearch.search.maxResults}")
+    private int maxResults;
+
     @Autowired
     private Search search;
 
+    @Autowired
+    private SearchResultCache searchResultCache;
+
     /**
-     * Handles search requests and returns a list of {@link DocumentBean} objects based on the specified search type.
+     * Handles search requests and returns a JSON array of results based on the specified search type.
+     *
+     * <p>This method performs a search using the specified query and search type (neural, text, or hybrid). The
+     * OpenSearch response is read as a stream by the {@link SearchResponseWriter}, which writes the {@code uuid},
+     * {@code name}, {@code text} and {@code score} of every segment to the body of the response.</p>
+     *
+     * <p>With the {@code document} result mode, {@code opensearch.search.documentOversampling} times more segments
+     * are retrieved and grouped by document, so every document is returned once with its best matching segment, its
+     * score and the number of its matching segments. The {@code segment} result mode returns every matching segment.
+     * </p>
+     *
+     * <p>Results are served from the {@link SearchResultCache} until new content is indexed. A request whose
+     * {@code If-None-Match} header matches the ETag of the current result gets a 304 Not Modified response.</p>
      *
-     * <p>This method performs a search using the specified query and search type (neural, text, or hybrid). It extracts
-     * the hits from the search results, processes each hit to create a {@link DocumentBean} object, and returns a list
-     * of these objects.</p>
+     * <p>Segment results of keyword and neural searches are paged: when more results may follow, the response
+     * includes a continuation token in the {@code X-Next-Page-Token} header, to be sent back in the
+     * {@code pageToken} parameter, up to {@code opensearch.search.maxResults} results. Most clients do not page, so
+     * the first page is read from the index itself, and the point-in-time reader the next pages are read from is
+     * only opened with the second page, see {@link #nextPage(String, String, String, String)}. Next pages are not
+     * cached.</p>
+     *
+     * <p>The second page may therefore see changes indexed after the first page was read. A page is only cached
+     * once the changes of the index are searchable, and only served until the index changes again, so a cached
+     * first page matches the data of the reader opened with the second page.</p>
      *
      * @param query the search query string
      * @param searchType the type of search to perform; can be "neural", "text", or "hybrid"
-     * @return a list of {@link DocumentBean} objects representing the search results
+     * @param resultMode the level of the results; can be "segment" or "document"
+     * @param pageToken the continuation token of the page to return, or null for the first page
+     * @param webRequest the current request, used to check its {@code If-None-Match} header
+     * @return the JSON array of results, or no body when not modified
      * @throws Exception if an error occurs during the search or processing of results
      * @throws IllegalArgumentException if the provided search type is invalid
      */
     @GetMapping("/search")
-    public List<DocumentBean> search(@RequestParam String query, @RequestParam(defaultValue = "neural") String searchType) throws Exception {
+    public ResponseEntity<byte[]> search(@RequestParam String query,
+                                         @RequestParam(defaultValue = "neural") String searchType,
+                                         @RequestParam(defaultValue = "segment") String resultMode,
+                                         @RequestParam(required = false) String pageToken,
+                                         WebRequest webRequest) throws Exception {
+
+        boolean documentMode = resultMode.equalsIgnoreCase("document");
+        String key = SearchResultCache.key(query, searchType.toLowerCase(), documentMode ? "document" : "segment",
+                resultsCount);
+        boolean pageable = !documentMode && !searchType.equalsIgnoreCase("hybrid");
+        if (pageToken != null) {
+            if (!pageable) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Paging is only available for segment results of keyword and neural searches");
+            }
+            return nextPage(query, searchType.toLowerCase(), key, pageToken);
+        }
+
+        long version = searchResultCache.getVersion();
+        String etag = searchResultCache.etag(key);
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        SearchResultCache.Entry cached = searchResultCache.get(key);
+        if (cached != null) {
+            return withNextPage(ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(cached.etag()),
+                    cached.nextPageToken()).body(cached.body());
+        }
 
-        // Perform the search based on searchType
-        JsonNode results = switch (searchType.toLowerCase()) {
-            case "keyword" -> search.keywordSearch(query);
-            case "hybrid" -> search.hybridSearch(query);
-            default -> search.neuralSearch(query);
+        // Perform the search based on searchType, oversampling segments to fill the results with distinct documents
+        int size = documentMode ? resultsCount * Math.max(1, documentOversampling) : resultsCount;
+        Search.ResponseReader<SearchResponseWriter.Page> reader = documentMode
+                ? parser -> SearchResponseWriter.documents(parser, resultsCount)
+                : SearchResponseWriter::segments;
+        SearchResponseWriter.Page page = switch (searchType.toLowerCase()) {
+            case "keyword" -> search.keywordSearch(query, size, null, reader);
+            case "hybrid" -> search.hybridSearch(query, size, reader);
+            default -> search.neuralSearch(query, size, null, reader);
         };
 
-        // Extract hits from search results
-        JsonNode hitsNode = results.path("hits").path("hits");
+        // The token of the next page does not hold a point-in-time reader, it is opened with the second page
+        String nextPageToken = pageable && resultsCount < maxResults && page.hits() == resultsCount
+                && page.last() != null ? PageToken.encode(key, page.next(resultsCount)) : null;
 
-        // Process hits and create DocumentBean objects
-        List<DocumentBean> documents = new ArrayList<>();
-        for (JsonNode hitNode : hitsNode) {
-            JsonNode sourceNode = hitNode.path("_source");
-            String id = sourceNode.path("id").asText();
-            String name = sourceNode.path("name").asText();
-            // Escape special characters in text content
-            String text = JsonUtils.escape(sourceNode.path("text").asText());
-            documents.add(DocumentBean.builder().uuid(id).name(name).text(text).build());
+        // Results of a search started before the latest changes were searchable are not cached
+        SearchResultCache.Entry entry = etag == null ? null
+                : searchResultCache.put(key, version, page.body(), nextPageToken);
+        if (entry == null) {
+            return withNextPage(ResponseEntity.ok().cacheControl(CacheControl.noStore()), nextPageToken)
+                    .body(page.body());
         }
+        return withNextPage(ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(entry.etag()),
+                nextPageToken).body(page.body());
+    }
 
-        return documents;
+    /**
+     * Returns the page of segment results following a continuation token.
+     *
+     * <p>Every page is read with {@code search_after} from the point-in-time reader opened with the second page, so
+     * the next pages are consistent with each other and the segments of the previous pages are not returned again. The reader is closed once the last
+     * page has been returned, or expires after {@code opensearch.search.pit.keepAlive} when the client stops
+     * paging.</p>
+     *
+     * @param query the search query string
+     * @param searchType the type of search to perform; can be "neural" or "keyword"
+     * @param key the key of the search, the token has to be returned for the same search
+     * @param pageToken the continuation token of the page
+     * @return the segments of the page, with the continuation token of the next page if more results may follow
+     * @throws IOException if an error occurs during the search
+     * @throws ResponseStatusException if the token is invalid (400) or its point-in-time reader has expired (410)
+     */
+    private ResponseEntity<byte[]> nextPage(String query, String searchType, String key, String pageToken)
+            throws IOException {
+        Search.Cursor cursor;
+        try {
+            cursor = PageToken.decode(key, pageToken);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        int size = Math.min(resultsCount, maxResults - cursor.offset());
+        if (size <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page token is beyond the maximum results");
+        }
+        if (cursor.pitId() == null) {
+            cursor = cursor.withPitId(search.openPit());
+        }
+
+        SearchResponseWriter.Page page;
+        try {
+            page = searchType.equals("keyword")
+                    ? search.keywordSearch(query, size, cursor, SearchResponseWriter::segments)
+                    : search.neuralSearch(query, size, cursor, SearchResponseWriter::segments);
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                throw new ResponseStatusException(HttpStatus.GONE, "Page token has expired", e);
+            }
+            throw e;
+        }
+
+        // OpenSearch may return a new ID for the point-in-time reader
+        String pitId = page.pitId() != null ? page.pitId() : cursor.pitId();
+        int offset = cursor.offset() + page.hits();
+        String nextPageToken = null;
+        if (page.hits() == size && offset < maxResults && page.last() != null) {
+            nextPageToken = PageToken.encode(key, page.next(offset).withPitId(pitId));
+        } else {
+            search.closePit(pitId);
+        }
+        return withNextPage(ResponseEntity.ok().cacheControl(CacheControl.noStore()), nextPageToken)
+                .body(page.body());
+    }
+
+    /**
+     * Adds the continuation token of the next page to a response, which is a JSON body.
+     *
+     * @param response the response builder
+     * @param nextPageToken the continuation token of the next page, or null if there is no next page
+     * @return the response builder
+     */
+    private static ResponseEntity.BodyBuilder withNextPage(ResponseEntity.BodyBuilder response, String nextPageToken) {
+        response.contentType(MediaType.APPLICATION_JSON);
+        return nextPageToken == null ? response : response.header(NEXT_PAGE_TOKEN, nextPageToken);
     }
 
-}
\ No newline at end of file
+}
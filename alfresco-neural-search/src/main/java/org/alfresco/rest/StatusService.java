@@ -0,0 +1,163 @@
+package org.alfresco.rest;
+
+import org.alfresco.opensearch.index.Reindexer;
+import org.alfresco.opensearch.ingest.IngestionExecutor;
+import org.alfresco.opensearch.search.QueryEmbeddings;
+import org.alfresco.opensearch.ingest.RetryJournal;
+import org.alfresco.opensearch.ingest.state.NodeStateStore;
+import org.alfresco.repo.service.IndexingProgress;
+import org.alfresco.repo.service.PartitionLeases;
+import org.alfresco.repo.service.RepositoryEventListener;
+import org.alfresco.repo.service.WindowSizer;
+import org.alfresco.repo.service.pipeline.IngestionPipeline;
+import org.alfresco.repo.service.pipeline.NodeFilter;
+import org.alfresco.repo.service.pipeline.Stage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controller class exposing the status and metrics of the indexing process.
+ */
+@RestController
+public class StatusService {
+
+    @Autowired
+    private IngestionExecutor ingestionExecutor;
+
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+
+    @Autowired
+    private NodeFilter nodeFilter;
+
+    @Autowired
+    private NodeStateStore nodeStateStore;
+
+    @Autowired
+    private RetryJournal retryJournal;
+
+    @Autowired
+    private IndexingProgress indexingProgress;
+
+    @Autowired
+    private WindowSizer windowSizer;
+
+    @Autowired
+    private PartitionLeases partitionLeases;
+
+    @Autowired
+    private Reindexer reindexer;
+
+    @Autowired
+    private QueryEmbeddings queryEmbeddings;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    // Only available when event-driven ingestion is enabled
+    @Autowired(required = false)
+    private RepositoryEventListener repositoryEventListener;
+
+    /**
+     * Handles status requests, returning the indexing progress, the sizing of transaction windows and the metrics of
+     * the ingestion executor, pipeline, node filter, node state store, retry journal, repository event listener,
+     * partition leases, index rebuild, query embedding cache
+     * and search result cache.
+     *
+     * @return a map of metric groups, each one containing metric values by name
+     */
+    @GetMapping("/status")
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("indexedTxnId", indexingProgress.getIndexedTxnId());
+        progress.put("repositoryMaxTxnId", indexingProgress.getRepositoryMaxTxnId());
+        progress.put("lag", indexingProgress.getLag());
+        progress.put("rate", indexingProgress.getRate());
+        progress.put("estimatedSecondsToCatchUp", indexingProgress.getEstimatedSecondsToCatchUp());
+        progress.put("catchingUp", indexingProgress.isCatchingUp());
+        status.put("progress", progress);
+
+        Map<String, Object> window = new LinkedHashMap<>();
+        window.put("nodeBudget", windowSizer.getNodeBudget());
+        window.put("transactionCount", windowSizer.getTransactionCount());
+        window.put("nodesPerTransaction", windowSizer.getNodesPerTransaction());
+        window.put("millisPerNode", windowSizer.getMillisPerNode());
+        status.put("window", window);
+
+        Map<String, Object> executor = new LinkedHashMap<>();
+        executor.put("queueDepth", ingestionExecutor.getQueueDepth());
+        executor.put("activeThreads", ingestionExecutor.getActiveThreads());
+        executor.put("saturation", ingestionExecutor.getSaturation());
+        executor.put("inFlightRequests", ingestionExecutor.getInFlightRequests());
+        executor.put("throttledRequests", ingestionExecutor.getThrottledRequests());
+        status.put("executor", executor);
+
+        Map<String, Object> pipeline = new LinkedHashMap<>();
+        for (Stage<?> stage : ingestionPipeline.stages()) {
+            pipeline.put(stage.getName() + ".queueDepth", stage.getQueueDepth());
+        }
+        pipeline.put("collapsedEvents", ingestionPipeline.getCollapsedEvents());
+        status.put("pipeline", pipeline);
+
+        status.put("filter", nodeFilter.getCounters());
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", nodeStateStore.isEnabled());
+        state.put("complete", nodeStateStore.isComplete());
+        state.put("nodes", nodeStateStore.size());
+        status.put("state", state);
+
+        Map<String, Object> retry = new LinkedHashMap<>();
+        retry.put("enabled", retryJournal.isEnabled());
+        retry.put("pending", retryJournal.size());
+        retry.put("deadLetters", retryJournal.getDeadLetters());
+        status.put("retry", retry);
+
+        Map<String, Object> events = new LinkedHashMap<>();
+        events.put("enabled", repositoryEventListener != null);
+        if (repositoryEventListener != null) {
+            events.put("received", repositoryEventListener.getReceivedEvents());
+            events.put("requestedRuns", repositoryEventListener.getRequestedRuns());
+        }
+        status.put("events", events);
+
+        Map<String, Object> coordination = new LinkedHashMap<>();
+        coordination.put("enabled", partitionLeases.isEnabled());
+        if (partitionLeases.isEnabled()) {
+            coordination.put("instanceId", partitionLeases.getInstanceId());
+            coordination.put("partitions", partitionLeases.getHeldPartitions());
+        }
+        status.put("coordination", coordination);
+
+        Map<String, Object> reindex = new LinkedHashMap<>();
+        reindex.put("running", reindexer.isRunning());
+        if (reindexer.getTargetIndex() != null) {
+            reindex.put("targetIndex", reindexer.getTargetIndex());
+            reindex.put("total", reindexer.getTotal());
+            reindex.put("copied", reindexer.getCopied());
+        }
+        status.put("reindex", reindex);
+
+        Map<String, Object> embeddings = new LinkedHashMap<>();
+        embeddings.put("size", queryEmbeddings.size());
+        embeddings.put("hits", queryEmbeddings.getHits());
+        embeddings.put("misses", queryEmbeddings.getMisses());
+        status.put("queryEmbeddings", embeddings);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("size", searchResultCache.size());
+        results.put("bytes", searchResultCache.getBytes());
+        results.put("hits", searchResultCache.getHits());
+        results.put("misses", searchResultCache.getMisses());
+        status.put("resultCache", results);
+
+        return status;
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.alfresco.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code long} keys to {@code int} values, stored in two primitive arrays with open addressing and
+ * linear probing, so no key or value is boxed and no entry object is allocated.
+ * <p>
+ * The map is sized for an expected number of entries and grows when it is half full. {@link Long#MIN_VALUE} is
+ * reserved to mark empty slots and cannot be used as a key. This class is not thread safe.
+ */
+public class LongIntHashMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates a map able to hold the expected number of entries without growing.
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1);
+    }
+
+    /**
+     * Associates a value with a key, replacing the previous value of the key.
+     *
+     * @param key the key, any value but {@link Long#MIN_VALUE}
+     * @param value the value
+     */
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Reserved key " + key);
+        }
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+            if (size * 2 > keys.length) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Gets the value associated with a key.
+     *
+     * @param key the key
+     * @param defaultValue the value returned when the key is not in the map
+     * @return the value of the key, or the default value
+     */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY) {
+            return defaultValue;
+        }
+        int slot = slot(key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot where it would be inserted.
+     *
+     * @param key the key
+     * @return the index of the slot
+     */
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity of the map, inserting every entry again.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Allocates empty arrays with the specified capacity.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Spreads the bits of a key, so sequential keys such as database IDs do not form long probe sequences.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.alfresco.opensearch.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryJournalTest {
+
+    private static final long INITIAL_DELAY = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private RetryJournal journal;
+
+    @AfterEach
+    void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void loadsLiveOperationsAndSkipsTornLine() throws IOException {
+        journal = open();
+        journal.add(operation("doc1_0", "first"));
+        journal.add(operation("doc2_0", "second"));
+        journal.succeeded("doc1_0");
+        journal.close();
+
+        // A crash while appending leaves a partial line
+        Files.writeString(journalPath(), "{\"type\":\"put\",\"id\":\"doc3_0\",\"li", StandardOpenOption.APPEND);
+
+        journal = open();
+        assertEquals(1, journal.size());
+        List<BulkIndexer.BulkOperation> due = journal.due(Long.MAX_VALUE);
+        assertEquals(1, due.size());
+        assertEquals("doc2_0", due.get(0).id());
+        assertArrayEquals(lines("second"), due.get(0).lines());
+        // The journal is rewritten with the live operations when loaded
+        assertEquals(1, Files.readAllLines(journalPath()).size());
+    }
+
+    @Test
+    void compactsToLiveOperations() throws IOException {
+        journal = open();
+        journal.add(operation("doc1_0", "first"));
+        journal.add(operation("doc2_0", "second"));
+        journal.add(operation("doc3_0", "third"));
+        journal.discard("doc2_0");
+        assertEquals(4, Files.readAllLines(journalPath()).size());
+
+        journal.compact();
+        assertEquals(2, Files.readAllLines(journalPath()).size());
+
+        // Records appended after the compaction are kept
+        journal.discard("doc1_0");
+        journal.close();
+        journal = open();
+        assertEquals(List.of("doc3_0"), ids(journal.due(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void discardsEveryOperationOfDeletedDocument() throws IOException {
+        journal = open();
+        journal.add(operation("doc1_0", "first"));
+        journal.add(operation("doc1_1", "second"));
+        journal.add(operation("alfresco-v2/doc1_0", "shadow"));
+        journal.add(operation("doc10_0", "other"));
+        journal.add(operation("doc2_0", "other"));
+
+        journal.discardDocument("doc1");
+        assertEquals(List.of("doc10_0", "doc2_0"), ids(journal.due(Long.MAX_VALUE)));
+
+        journal.close();
+        journal = open();
+        assertEquals(List.of("doc10_0", "doc2_0"), ids(journal.due(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void schedulesRetryAfterInitialDelay() throws IOException {
+        journal = open();
+        long before = System.currentTimeMillis();
+        journal.add(operation("doc1_0", "first"));
+        assertTrue(journal.due(before).isEmpty());
+        assertEquals(List.of("doc1_0"), ids(journal.due(System.currentTimeMillis() + INITIAL_DELAY)));
+    }
+
+    @Test
+    void detectsSupersededOperation() throws IOException {
+        journal = open();
+        BulkIndexer.BulkOperation first = operation("doc1_0", "first");
+        journal.add(first);
+        assertTrue(journal.isJournaled(first));
+
+        journal.add(operation("doc1_0", "newer"));
+        assertFalse(journal.isJournaled(first));
+
+        journal.discard("doc1_0");
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    void movesExhaustedOperationToDeadLetters() throws IOException {
+        journal = open();
+        BulkIndexer.BulkOperation operation = operation("doc1_0", "first");
+        journal.add(operation);
+        journal.failed(operation.failed("still failing"));
+        assertEquals(1, journal.size());
+        journal.failed(operation.failed("still failing"));
+
+        assertEquals(0, journal.size());
+        assertEquals(1, journal.getDeadLetters());
+        List<String> deadLetters = Files.readAllLines(deadLetterPath());
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.get(0).contains("\"id\":\"doc1_0\""));
+        assertTrue(deadLetters.get(0).contains("\"attempts\":3"));
+    }
+
+    private Path journalPath() {
+        return tempDir.resolve("retry.ndjson");
+    }
+
+    private Path deadLetterPath() {
+        return tempDir.resolve("dead-letter.ndjson");
+    }
+
+    private RetryJournal open() throws IOException {
+        RetryJournal retryJournal = new RetryJournal();
+        ReflectionTestUtils.setField(retryJournal, "enabled", true);
+        ReflectionTestUtils.setField(retryJournal, "path", journalPath().toString());
+        ReflectionTestUtils.setField(retryJournal, "deadLetterPath", deadLetterPath().toString());
+        ReflectionTestUtils.setField(retryJournal, "maxAttempts", 3);
+        ReflectionTestUtils.setField(retryJournal, "initialDelay", INITIAL_DELAY);
+        ReflectionTestUtils.setField(retryJournal, "maxDelay", 4 * INITIAL_DELAY);
+        retryJournal.init();
+        return retryJournal;
+    }
+
+    private static BulkIndexer.BulkOperation operation(String id, String text) {
+        return new BulkIndexer.BulkOperation(id, false, lines(text), "rejected");
+    }
+
+    private static byte[] lines(String text) {
+        return ("{\"index\":{}}\n{\"text\":\"" + text + "\"}\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> ids(List<BulkIndexer.BulkOperation> operations) {
+        return operations.stream().map(BulkIndexer.BulkOperation::id).toList();
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SentencePackerTest {
+
+    private final List<String> segments = new ArrayList<>();
+
+    @Test
+    void repeatsTrailingSentencesWithinOverlap() {
+        SentencePacker packer = new SentencePacker(5, 2, segments::add);
+        addSentence(packer, "a", "b.");
+        addSentence(packer, "c", "d.");
+        addSentence(packer, "e", "f.");
+        packer.finish();
+        assertEquals(List.of("a b. c d.", "c d. e f."), segments);
+    }
+
+    @Test
+    void dropsOverlapThatDoesNotLeaveRoomForNextSentence() {
+        SentencePacker packer = new SentencePacker(5, 3, segments::add);
+        addSentence(packer, "a", "b.");
+        addSentence(packer, "c", "d", "e.");
+        addSentence(packer, "f", "g", "h", "i.");
+        packer.finish();
+        // "c d e." fits in the overlap budget but would leave no room for "f g h i."
+        assertEquals(List.of("a b. c d e.", "f g h i."), segments);
+    }
+
+    @Test
+    void cutsLongSentenceAtWordBoundary() {
+        SentencePacker packer = new SentencePacker(3, 1, segments::add);
+        addSentence(packer, "w1", "w2", "w3", "w4", "w5");
+        packer.finish();
+        assertEquals(List.of("w1 w2 w3", "w4 w5"), segments);
+    }
+
+    @Test
+    void emitsOverLongWordAlone() {
+        SentencePacker packer = new SentencePacker(5, 2, segments::add);
+        add(packer, "a.", 1, true);
+        add(packer, "supercalifragilistic", 7, true);
+        add(packer, "b.", 1, true);
+        packer.finish();
+        // The over-long word is never repeated as overlap, since every segment drops at least one sentence
+        assertEquals(List.of("a.", "supercalifragilistic", "b."), segments);
+    }
+
+    @Test
+    void emitsNothingWithoutWords() {
+        SentencePacker packer = new SentencePacker(5, 2, segments::add);
+        packer.finish();
+        assertEquals(List.of(), segments);
+    }
+
+    /**
+     * Adds the words of a sentence, one token each, the last word ending the sentence.
+     */
+    private static void addSentence(SentencePacker packer, String... words) {
+        for (int i = 0; i < words.length; i++) {
+            add(packer, words[i], 1, i == words.length - 1);
+        }
+    }
+
+    private static void add(SentencePacker packer, String word, int tokens, boolean sentenceEnd) {
+        String text = "[" + word + "]";
+        packer.addWord(text, 1, text.length() - 1, tokens, sentenceEnd);
+    }
+
+}
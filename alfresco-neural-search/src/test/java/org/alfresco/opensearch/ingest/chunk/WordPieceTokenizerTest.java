@@ -0,0 +1,79 @@
+package org.alfresco.opensearch.ingest.chunk;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WordPieceTokenizerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path vocabulary;
+
+    @BeforeEach
+    void writeVocabulary() throws IOException {
+        vocabulary = tempDir.resolve("vocab.txt");
+        Files.write(vocabulary, List.of("[UNK]", "play", "##ing", "##ed", "un", "##play", "##able", "cafe", "hello"));
+    }
+
+    @Test
+    void splitsWordsIntoLongestPieces() throws IOException {
+        WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocabulary, true);
+        assertEquals(9, tokenizer.size());
+        assertEquals(1, count(tokenizer, "play"));
+        assertEquals(2, count(tokenizer, "playing"));
+        assertEquals(3, count(tokenizer, "unplayable"));
+    }
+
+    @Test
+    void countsPunctuationAsSeparateTokens() throws IOException {
+        WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocabulary, true);
+        assertEquals(2, count(tokenizer, "hello,"));
+        assertEquals(4, count(tokenizer, "(played)"));
+    }
+
+    @Test
+    void mapsUnknownWordToSingleToken() throws IOException {
+        WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocabulary, true);
+        assertEquals(1, count(tokenizer, "xyz"));
+        assertEquals(1, count(tokenizer, "playx"));
+    }
+
+    @Test
+    void mapsOverLongWordToSingleToken() throws IOException {
+        WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocabulary, true);
+        // Made of known pieces, but longer than the 100 characters a BERT tokenizer splits
+        assertEquals(1, count(tokenizer, "play" + "ing".repeat(33)));
+        assertEquals(32, count(tokenizer, "play" + "ing".repeat(30) + "ed"));
+    }
+
+    @Test
+    void lowercasesAndStripsAccentsForUncasedModels() throws IOException {
+        assertEquals(1, count(new WordPieceTokenizer(vocabulary, true), "Café"));
+        assertEquals(2, count(new WordPieceTokenizer(vocabulary, true), "Playing"));
+        // Cased models keep the word as is, so it is unknown to this lowercase vocabulary
+        assertEquals(1, count(new WordPieceTokenizer(vocabulary, false), "Playing"));
+        assertEquals(2, count(new WordPieceTokenizer(vocabulary, false), "cafe-"));
+    }
+
+    @Test
+    void countsCjkCharactersAsSeparateTokens() throws IOException {
+        WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocabulary, true);
+        assertEquals(4, count(tokenizer, "中文分词"));
+        assertEquals(3, count(tokenizer, "play中文"));
+    }
+
+    private static int count(WordPieceTokenizer tokenizer, String word) {
+        String text = " " + word + " ";
+        return tokenizer.countTokens(text, 1, text.length() - 1);
+    }
+
+}
@@ -0,0 +1,216 @@
+package org.alfresco.opensearch.ingest.state;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NodeStateStoreTest {
+
+    private static final NodeState STATE_A = new NodeState("content-a", 3, 10);
+    private static final NodeState STATE_B = new NodeState("content-b", 1, 11);
+
+    @TempDir
+    Path tempDir;
+
+    private NodeStateStore store;
+
+    @AfterEach
+    void closeStore() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void writesOnlyCommittedChangesToLog() throws IOException {
+        store = open();
+        store.put("a", STATE_A);
+        NodeStateStore.Commit commit = store.prepareCommit();
+        store.put("b", STATE_B);
+        assertEquals(STATE_B, store.get("b"));
+        store.commit(commit);
+
+        store = reopen();
+        assertEquals(STATE_A, store.get("a"));
+        assertNull(store.get("b"));
+    }
+
+    @Test
+    void replaysRemovals() throws IOException {
+        store = open();
+        store.put("a", STATE_A);
+        store.put("b", STATE_B);
+        store.remove("a");
+        store.commit(store.prepareCommit());
+
+        store = reopen();
+        assertNull(store.get("a"));
+        assertEquals(STATE_B, store.get("b"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void truncatesTornFinalRecord() throws IOException {
+        store = open();
+        store.put("a", STATE_A);
+        store.commit(store.prepareCommit());
+        long validLength = Files.size(log());
+        store.put("b", STATE_B);
+        store.commit(store.prepareCommit());
+        long fullLength = Files.size(log());
+        store.close();
+
+        // A crash while appending leaves only part of the last record
+        try (RandomAccessFile file = new RandomAccessFile(log().toFile(), "rw")) {
+            file.setLength(fullLength - 3);
+        }
+
+        store = reopen();
+        assertEquals(STATE_A, store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(validLength, Files.size(log()));
+
+        // Records appended after the truncation are replayed
+        store.put("b", STATE_B);
+        store.commit(store.prepareCommit());
+        store = reopen();
+        assertEquals(STATE_B, store.get("b"));
+    }
+
+    @Test
+    void dropsRecordWithInvalidChecksum() throws IOException {
+        store = open();
+        store.put("a", STATE_A);
+        store.commit(store.prepareCommit());
+        long validLength = Files.size(log());
+        store.put("b", STATE_B);
+        store.commit(store.prepareCommit());
+        store.close();
+
+        // Corrupt the last byte of the payload of the last record
+        try (RandomAccessFile file = new RandomAccessFile(log().toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        store = reopen();
+        assertEquals(STATE_A, store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(validLength, Files.size(log()));
+    }
+
+    @Test
+    void ignoresGarbageAfterValidRecords() throws IOException {
+        store = open();
+        store.put("a", STATE_A);
+        store.commit(store.prepareCommit());
+        long validLength = Files.size(log());
+        store.close();
+
+        Files.write(log(), new byte[] {0x7F, 0x7F, 0x7F, 0x7F, 1, 2}, StandardOpenOption.APPEND);
+
+        store = reopen();
+        assertEquals(STATE_A, store.get("a"));
+        assertEquals(validLength, Files.size(log()));
+    }
+
+    @Test
+    void compactsSupersededRecords() throws IOException {
+        store = open();
+        store.put("b", STATE_B);
+        // Compaction starts beyond twice the live states plus 10000 records
+        for (int i = 0; i < 10_010; i++) {
+            store.put("a", new NodeState("content-" + i, 1, i));
+        }
+        store.commit(store.prepareCommit());
+
+        // Only the two live states are left in the log
+        assertTrue(Files.size(log()) < 200, "Log has not been compacted: " + Files.size(log()) + " bytes");
+        store = reopen();
+        assertEquals(new NodeState("content-10009", 1, 10_009), store.get("a"));
+        assertEquals(STATE_B, store.get("b"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void doesNotCompactWithPendingChanges() throws IOException {
+        store = open();
+        for (int i = 0; i < 10_010; i++) {
+            store.put("a", new NodeState("content-" + i, 1, i));
+        }
+        NodeStateStore.Commit commit = store.prepareCommit();
+        store.put("b", STATE_B);
+        store.commit(commit);
+
+        // The snapshot would hold the uncommitted state of "b"
+        assertTrue(Files.size(log()) > 10_000);
+        store = reopen();
+        assertNull(store.get("b"));
+        assertEquals(new NodeState("content-10009", 1, 10_009), store.get("a"));
+    }
+
+    @Test
+    void keepsCompletenessAcrossRestarts() throws IOException {
+        store = open();
+        assertFalse(store.isComplete());
+        store.put("a", STATE_A);
+        store.reset();
+        assertTrue(store.isComplete());
+        assertNull(store.get("a"));
+
+        store.put("b", STATE_B);
+        store.commit(store.prepareCommit());
+        store = reopen();
+        assertTrue(store.isComplete());
+        assertEquals(STATE_B, store.get("b"));
+    }
+
+    @Test
+    void isNeverCompleteWhenCoordinated() throws IOException {
+        store = open();
+        store.reset();
+        store.close();
+
+        store = create();
+        ReflectionTestUtils.setField(store, "coordinated", true);
+        store.init();
+        assertFalse(store.isComplete());
+    }
+
+    private Path log() {
+        return tempDir.resolve("state.log");
+    }
+
+    private NodeStateStore create() {
+        NodeStateStore nodeStateStore = new NodeStateStore();
+        ReflectionTestUtils.setField(nodeStateStore, "enabled", true);
+        ReflectionTestUtils.setField(nodeStateStore, "path", log().toString());
+        return nodeStateStore;
+    }
+
+    private NodeStateStore open() throws IOException {
+        NodeStateStore nodeStateStore = create();
+        nodeStateStore.init();
+        return nodeStateStore;
+    }
+
+    private NodeStateStore reopen() throws IOException {
+        store.close();
+        return open();
+    }
+
+}
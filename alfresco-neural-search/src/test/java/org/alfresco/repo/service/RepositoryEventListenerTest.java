@@ -0,0 +1,121 @@
+package org.alfresco.repo.service;
+
+import org.alfresco.repo.service.pipeline.NodeFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.MessageListenerContainer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Publishes repository events to an embedded {@code vm://} broker and checks the indexing runs requested by the
+ * {@link RepositoryEventListener}.
+ */
+@SpringBootTest(classes = RepositoryEventListener.class, properties = {
+        "batch.indexer.events.enabled=true",
+        "batch.indexer.events.topic=alfresco.repo.event2",
+        "batch.indexer.events.debounce=500",
+        "spring.activemq.broker-url=vm://localhost?broker.persistent=false&broker.useJmx=false",
+        "spring.jms.pub-sub-domain=true"
+})
+@ImportAutoConfiguration({ActiveMQAutoConfiguration.class, JmsAutoConfiguration.class})
+class RepositoryEventListenerTest {
+
+    private static final String TOPIC = "alfresco.repo.event2";
+
+    // Time to wait for the debounced indexing run
+    private static final long RUN_TIMEOUT_MS = 5000;
+
+    @Autowired
+    private RepositoryEventListener listener;
+
+    @Autowired
+    private JmsTemplate jmsTemplate;
+
+    @Autowired
+    private JmsListenerEndpointRegistry registry;
+
+    @MockBean
+    private BatchIndexerService batchIndexerService;
+
+    @MockBean
+    private NodeFilter nodeFilter;
+
+    /**
+     * Waits for the listener to subscribe to the topic, since events published before are not delivered.
+     */
+    @BeforeEach
+    void awaitSubscription() throws InterruptedException {
+        when(nodeFilter.isIndexableType("cm:content")).thenReturn(true);
+        long deadline = System.currentTimeMillis() + RUN_TIMEOUT_MS;
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            while (!((DefaultMessageListenerContainer) container).isRegisteredWithDestination()) {
+                assertTrue(System.currentTimeMillis() < deadline, "Listener has not subscribed to " + TOPIC);
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    void debouncesNodeEventsIntoSingleRun() {
+        long receivedEvents = listener.getReceivedEvents();
+        long requestedRuns = listener.getRequestedRuns();
+
+        publish("org.alfresco.event.node.Created", "cm:content");
+        publish("org.alfresco.event.node.Updated", "cm:content");
+        publish("org.alfresco.event.node.Deleted", "cm:content");
+        publish("org.alfresco.event.node.Created", "cm:folder");
+
+        verify(batchIndexerService, timeout(RUN_TIMEOUT_MS)).index();
+        verify(batchIndexerService, after(1000).times(1)).index();
+        assertEquals(4, listener.getReceivedEvents() - receivedEvents);
+        assertEquals(1, listener.getRequestedRuns() - requestedRuns);
+    }
+
+    @Test
+    void ignoresEventsOfNonIndexableTypes() {
+        long requestedRuns = listener.getRequestedRuns();
+
+        publish("org.alfresco.event.node.Created", "cm:folder");
+        publish("org.alfresco.event.node.Updated", "cm:thumbnail");
+        publish("org.alfresco.event.assoc.child.Created", "cm:content");
+
+        verify(batchIndexerService, after(1500).never()).index();
+        assertEquals(0, listener.getRequestedRuns() - requestedRuns);
+    }
+
+    /**
+     * Publishes a node event to the topic of the repository events.
+     *
+     * @param type the type of the event
+     * @param nodeType the type of the node
+     */
+    private void publish(String type, String nodeType) {
+        jmsTemplate.convertAndSend(TOPIC, String.format("""
+                {
+                    "type": "%s",
+                    "data": {
+                        "resource": {
+                            "id": "%s-node",
+                            "nodeType": "%s"
+                        }
+                    }
+                }
+                """, type, nodeType.replace(':', '-'), nodeType));
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.alfresco.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongIntHashMapTest {
+
+    @Test
+    void growsBeyondExpectedSize() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i, i * 2);
+        }
+        assertEquals(100_000, map.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i * 2, map.get(i, -1));
+        }
+        assertEquals(-1, map.get(100_000, -1));
+    }
+
+    @Test
+    void replacesValueOfExistingKey() {
+        LongIntHashMap map = new LongIntHashMap(16);
+        map.put(42, 1);
+        map.put(42, 2);
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(42, -1));
+    }
+
+    @Test
+    void resolvesCollidingKeys() {
+        // Keys differing only in their high bits, which share their low bits before spreading
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 1000; i++) {
+            map.put((long) i << 40, i);
+            map.put(-((long) i << 40) - 1, -i);
+        }
+        assertEquals(2000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get((long) i << 40, Integer.MIN_VALUE));
+            assertEquals(-i, map.get(-((long) i << 40) - 1, Integer.MIN_VALUE));
+        }
+        assertEquals(Integer.MIN_VALUE, map.get(1000L << 40, Integer.MIN_VALUE));
+    }
+
+    @Test
+    void keepsEntriesWhenGrowingOnInsert() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        // The fifth entry fills half of the initial 8 slots and triggers the growth
+        for (int i = 1; i <= 5; i++) {
+            map.put(i * 31L, i);
+        }
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, map.get(i * 31L, -1));
+        }
+    }
+
+    @Test
+    void rejectsReservedKey() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertThrows(IllegalArgumentException.class, () -> map.put(Long.MIN_VALUE, 1));
+        assertEquals(-1, map.get(Long.MIN_VALUE, -1));
+        map.put(Long.MAX_VALUE, 7);
+        assertEquals(7, map.get(Long.MAX_VALUE, -1));
+    }
+
+}